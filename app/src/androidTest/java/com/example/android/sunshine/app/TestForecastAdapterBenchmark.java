@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.ForecastData;
+import com.example.android.sunshine.app.data.TestProvider;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Binding forecast rows from the adapter's preformatted rows against formatting them while
+ * binding, as the adapter did before.  Both run on the main thread over the same view holder,
+ * with local graphics so that Glide stays out of it.  Time and allocations per bind are logged
+ * under this class's tag; a frame has about 16 ms for every row scrolled into it.
+ */
+public class TestForecastAdapterBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastAdapterBenchmark.class.getSimpleName();
+
+    private static final int ITERATIONS = 1000;
+
+    private Context mThemedContext;
+    private ForecastData mForecast;
+    private ForecastAdapter mAdapter;
+    private ForecastAdapter.ForecastAdapterViewHolder mViewHolder;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        mForecast = ForecastData.query(mContext.getContentResolver(),
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        assertTrue("Error: Nothing to bind", mForecast.count > 1);
+        assertTrue("Error: The benchmark expects the default, local, art pack",
+                Utility.usingLocalGraphics(mContext));
+
+        mThemedContext = new ContextThemeWrapper(mContext, R.style.AppTheme);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                RecyclerView recyclerView = new RecyclerView(mThemedContext);
+                recyclerView.setLayoutManager(new LinearLayoutManager(mThemedContext));
+                mAdapter = new ForecastAdapter(mThemedContext,
+                        new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                            @Override
+                            public void onClick(Long date, long locationId,
+                                                ForecastAdapter.ForecastAdapterViewHolder vh) {
+                            }
+                        }, new View(mThemedContext), AbsListView.CHOICE_MODE_NONE);
+                mViewHolder = mAdapter.onCreateViewHolder(recyclerView,
+                        mAdapter.getItemViewType(1));
+                mAdapter.swapForecast(mForecast, null);
+            }
+        });
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return mAdapter.getItemCount() == mForecast.count;
+            }
+        }.run();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testBind() throws InterruptedException {
+        final long[] results = new long[4];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                // Warm up both paths, so that one-off lookups and caches don't count.
+                bindPreformatted();
+                bindWhileFormatting();
+
+                long[] preformatted = measure(new Runnable() {
+                    @Override
+                    public void run() {
+                        bindPreformatted();
+                    }
+                });
+                long[] formatting = measure(new Runnable() {
+                    @Override
+                    public void run() {
+                        bindWhileFormatting();
+                    }
+                });
+                System.arraycopy(preformatted, 0, results, 0, 2);
+                System.arraycopy(formatting, 0, results, 2, 2);
+            }
+        });
+        int binds = ITERATIONS * (mForecast.count - 1);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d binds: preformatted %.1f us and %.2f allocations, "
+                        + "formatting while binding %.1f us and %.2f allocations per bind",
+                binds, results[0] / 1e3 / binds, (double) results[1] / binds,
+                results[2] / 1e3 / binds, (double) results[3] / binds));
+        assertTrue("Error: Binding preformatted rows should allocate less",
+                results[1] < results[3]);
+    }
+
+    // Returns the nanoseconds taken and the objects allocated by the main thread.
+    @SuppressWarnings("deprecation")
+    private static long[] measure(Runnable binds) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        binds.run();
+        long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        return new long[]{nanos, Debug.getThreadAllocCount()};
+    }
+
+    // Every row but today's, which uses the other layout.
+    private void bindPreformatted() {
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int position = 1; position < mForecast.count; position++) {
+                mAdapter.onBindViewHolder(mViewHolder, position);
+            }
+        }
+    }
+
+    // What ForecastAdapter.onBindViewHolder did before its rows were preformatted.
+    private void bindWhileFormatting() {
+        Context context = mThemedContext;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int position = 1; position < mForecast.count; position++) {
+                int weatherId = mForecast.weatherIds[position];
+                mViewHolder.mIconView.setImageResource(
+                        Utility.getIconResourceForWeatherCondition(weatherId));
+                mViewHolder.mDateView.setText(Utility.getFriendlyDayString(context,
+                        mForecast.dates[position], false));
+                String description = Utility.getStringForWeatherCondition(context, weatherId);
+                mViewHolder.mDescriptionView.setText(description);
+                mViewHolder.mDescriptionView.setContentDescription(
+                        context.getString(R.string.a11y_forecast, description));
+                String high = Utility.formatTemperature(context, mForecast.maxTemps[position]);
+                mViewHolder.mHighTempView.setText(high);
+                mViewHolder.mHighTempView.setContentDescription(
+                        context.getString(R.string.a11y_high_temp, high));
+                String low = Utility.formatTemperature(context, mForecast.minTemps[position]);
+                mViewHolder.mLowTempView.setText(low);
+                mViewHolder.mLowTempView.setContentDescription(
+                        context.getString(R.string.a11y_low_temp, low));
+            }
+        }
+    }
+
+    private static void runOnMainThread(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runnable.run();
+                } finally {
+                    done.countDown();
+                }
+            }
+        });
+        done.await();
+    }
+}
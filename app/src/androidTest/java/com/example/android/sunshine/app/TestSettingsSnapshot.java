@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastData;
+import com.example.android.sunshine.app.data.TestProvider;
+import com.example.android.sunshine.app.data.TestUtilities;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSettingsSnapshot.class.getSimpleName();
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mUnits = mPrefs.getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mUnitsKey, mUnits).commit();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    // A changed preference is picked up without anyone asking for it.
+    public void testFollowsChanges() {
+        final boolean metric = Utility.isMetric(mContext);
+        int loads = SettingsSnapshot.getLoadCount();
+
+        mPrefs.edit().putString(mUnitsKey, mContext.getString(metric
+                ? R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+
+        // The listener is called on the main thread.
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return Utility.isMetric(mContext) != metric;
+            }
+        }.run();
+        assertTrue(SettingsSnapshot.getLoadCount() > loads);
+    }
+
+    // Formatting a screenful of rows reads no preferences at all.
+    public void testNoLookupsWhileFormatting() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        ForecastData forecast = ForecastData.query(mContext.getContentResolver(),
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        // Make sure a snapshot exists before counting.
+        SettingsSnapshot.get(mContext);
+
+        int reads = SettingsSnapshot.getReadCount();
+        int loads = SettingsSnapshot.getLoadCount();
+        ForecastRow[] rows = ForecastRow.fromForecast(mContext, forecast, true);
+        int frameReads = SettingsSnapshot.getReadCount() - reads;
+
+        assertEquals(forecast.count, rows.length);
+        assertEquals("Error: Formatting rows shouldn't read the preferences",
+                loads, SettingsSnapshot.getLoadCount());
+        // Each of these used to be a SharedPreferences lookup, with its keys read from resources.
+        Log.i(LOG_TAG, rows.length + " rows: " + frameReads
+                + " settings lookups, none of them in SharedPreferences");
+    }
+}
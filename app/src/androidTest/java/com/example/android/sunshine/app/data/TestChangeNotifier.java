@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+public class TestChangeNotifier extends AndroidTestCase {
+
+    // Long enough for a notification that was going to arrive to have arrived.
+    private static final long SETTLE_MILLIS = 5 * ChangeNotifier.DEBOUNCE_MILLIS;
+
+    private ChangeNotifier mNotifier;
+    private CountingObserver mObserver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mNotifier = ChangeNotifier.getInstance(mContext);
+        // Let the deletes' notifications go by before counting.
+        Thread.sleep(SETTLE_MILLIS);
+        mObserver = new CountingObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                mObserver);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().unregisterContentObserver(mObserver);
+        mObserver.quit();
+        super.tearDown();
+    }
+
+    // A sync's bulk insert, single inserts and purge, as one batch, reload observers once.
+    public void testBatchDeliversOnce() throws InterruptedException {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        mNotifier.beginBatch();
+        try {
+            ContentValues[] values = TestProvider.createBulkInsertWeatherValues(locationRowId);
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE - 1);
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+            mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI,
+                    WeatherEntry.COLUMN_DATE + " < ?",
+                    new String[]{Long.toString(TestUtilities.TEST_DATE)});
+
+            Thread.sleep(SETTLE_MILLIS);
+            assertEquals("Error: Notified before the batch ended", 0, mObserver.getCount());
+        } finally {
+            mNotifier.endBatch();
+        }
+
+        mObserver.waitForChanges(1);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals("Error: One batch should reload observers once", 1, mObserver.getCount());
+    }
+
+    // Notifications made within the debounce window are merged, a parent covering its children.
+    public void testMergesChildrenIntoParent() throws InterruptedException {
+        int delivered = mNotifier.getDeliveredCount();
+        mNotifier.notifyChange(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        mNotifier.notifyChange(WeatherEntry.CONTENT_URI);
+        mNotifier.notifyChange(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE));
+        mNotifier.notifyChange(WeatherEntry.CONTENT_URI);
+
+        mObserver.waitForChanges(1);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(1, mObserver.getCount());
+        assertEquals(delivered + 1, mNotifier.getDeliveredCount());
+    }
+
+    // Unrelated Uris are each delivered.
+    public void testKeepsSiblings() throws InterruptedException {
+        int delivered = mNotifier.getDeliveredCount();
+        mNotifier.notifyChange(WeatherEntry.CONTENT_URI);
+        mNotifier.notifyChange(LocationEntry.CONTENT_URI);
+
+        mObserver.waitForChanges(1);
+        Thread.sleep(SETTLE_MILLIS);
+        assertEquals(delivered + 2, mNotifier.getDeliveredCount());
+    }
+
+    static class CountingObserver extends ContentObserver {
+        private final HandlerThread mThread;
+        private int mCount;
+
+        CountingObserver() {
+            this(startThread());
+        }
+
+        private CountingObserver(HandlerThread thread) {
+            super(new Handler(thread.getLooper()));
+            mThread = thread;
+        }
+
+        private static HandlerThread startThread() {
+            HandlerThread thread = new HandlerThread("CountingObserverThread");
+            thread.start();
+            return thread;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public synchronized void onChange(boolean selfChange, Uri uri) {
+            mCount++;
+        }
+
+        synchronized int getCount() {
+            return mCount;
+        }
+
+        void waitForChanges(final int count) {
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return getCount() >= count;
+                }
+            }.run();
+        }
+
+        void quit() {
+            mThread.quit();
+        }
+    }
+}
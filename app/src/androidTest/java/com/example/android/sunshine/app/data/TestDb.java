@@ -17,10 +17,17 @@ package com.example.android.sunshine.app.data;
 
 import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 import java.util.HashSet;
+import java.util.regex.Pattern;
 
 public class TestDb extends AndroidTestCase {
 
@@ -234,4 +241,195 @@ public class TestDb extends AndroidTestCase {
         db.close();
         return locationRowId;
     }
+
+    private static final int PLAN_LOCATIONS = 10;
+    private static final int PLAN_DAYS = 180;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Matches a query plan step that walks the whole weather table, with or without an index.
+    private static final Pattern WEATHER_SCAN =
+            Pattern.compile("^SCAN (TABLE )?" + WeatherEntry.TABLE_NAME + "\\b");
+
+    /*
+        With months of history for several cities in the table, none of the provider's location
+        lookups, nor the sync's purge of old days, may fall back to scanning the weather table.
+     */
+    public void testWeatherQueriesUseIndexes() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        insertHistory(db);
+
+        // What the forecast list asks for, which is the widest of the location queries.
+        String[] projection = {
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_MIN_TEMP,
+                LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherEntry.COLUMN_WEATHER_ID,
+                LocationEntry.COLUMN_COORD_LAT,
+                LocationEntry.COLUMN_COORD_LONG
+        };
+        String sortOrder = WeatherEntry.COLUMN_DATE + " ASC";
+        String location = "plan-3";
+        String date = Long.toString(WeatherContract.normalizeDate(dateOf(PLAN_DAYS / 2)));
+        SQLiteQueryBuilder builder = WeatherProvider.sWeatherByLocationSettingQueryBuilder;
+
+        // weather/*
+        assertIndexedPlan(db, builder.buildQuery(projection,
+                WeatherProvider.sLocationSettingSelection, null, null, sortOrder, null),
+                new String[]{location}, true);
+        // weather/*?date=
+        assertIndexedPlan(db, builder.buildQuery(projection,
+                WeatherProvider.sLocationSettingWithStartDateSelection, null, null, sortOrder,
+                null), new String[]{location, date}, true);
+        // weather/*/#, which the UNIQUE (date, location_id) index serves just as well
+        assertIndexedPlan(db, builder.buildQuery(null,
+                WeatherProvider.sLocationSettingAndDaySelection, null, null, null, null),
+                new String[]{location, date}, false);
+        // forecast/#, forecast/#?date= and forecast/#/#
+        String locationId = DatabaseUtils.stringForQuery(db, "SELECT " + LocationEntry._ID +
+                " FROM " + LocationEntry.TABLE_NAME + " WHERE " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{location});
+        assertIndexedPlan(db, builder.buildQuery(projection,
+                WeatherProvider.sLocationIdSelection, null, null, sortOrder, null),
+                new String[]{locationId}, true);
+        assertIndexedPlan(db, builder.buildQuery(projection,
+                WeatherProvider.sLocationIdWithStartDateSelection, null, null, sortOrder, null),
+                new String[]{locationId, date}, true);
+        assertIndexedPlan(db, builder.buildQuery(null,
+                WeatherProvider.sLocationIdAndDaySelection, null, null, null, null),
+                new String[]{locationId, date}, false);
+        // The sync's purge of past days
+        assertIndexedPlan(db, "DELETE FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                WeatherEntry.COLUMN_DATE + " <= ?", new String[]{date}, false);
+        db.close();
+    }
+
+    // The tables as version 2 shipped them, before the (location_id, date) index.
+    private static final String SQL_CREATE_V2_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL );";
+    private static final String SQL_CREATE_V2_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    // A populated version 2 database keeps every cached row through each later version.
+    public void testUpgradeFromVersion2KeepsForecast() {
+        SQLiteDatabase v2 = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        v2.execSQL(SQL_CREATE_V2_LOCATION_TABLE);
+        v2.execSQL(SQL_CREATE_V2_WEATHER_TABLE);
+        v2.setVersion(2);
+        insertHistory(v2);
+        String before = dumpWeather(v2);
+        v2.close();
+
+        long start = System.nanoTime();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        long upgradeMillis = (System.nanoTime() - start) / 1000000;
+        Log.i(LOG_TAG, "Upgraded " + PLAN_LOCATIONS * PLAN_DAYS + " rows from version 2 to " +
+                WeatherDbHelper.DATABASE_VERSION + " in " + upgradeMillis + " ms");
+
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals("Error: Locations lost in the upgrade", PLAN_LOCATIONS,
+                DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+        assertEquals("Error: Weather rows changed in the upgrade", before, dumpWeather(db));
+        assertEquals("Error: " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE + " not created",
+                1, DatabaseUtils.longForQuery(db,
+                        "SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND name = ?",
+                        new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE}));
+
+        // The upgraded tables still take writes the way the provider makes them.
+        WeatherBulkWriter writer = new WeatherBulkWriter(db);
+        WeatherBatch batch = new WeatherBatch(1);
+        batch.add(DatabaseUtils.longForQuery(db, "SELECT MIN(" + LocationEntry._ID + ") FROM " +
+                LocationEntry.TABLE_NAME, null), dateOf(0), 500, "Rain", 5, 8, 90, 1000, 7, 270);
+        db.beginTransaction();
+        try {
+            assertEquals(1, writer.write(batch));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writer.close();
+        }
+        assertEquals(PLAN_LOCATIONS * PLAN_DAYS,
+                DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        db.close();
+    }
+
+    private static String dumpWeather(SQLiteDatabase db) {
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null,
+                WeatherEntry._ID);
+        StringBuilder dump = new StringBuilder();
+        while (cursor.moveToNext()) {
+            DatabaseUtils.dumpCurrentRow(cursor, dump);
+        }
+        cursor.close();
+        return dump.toString();
+    }
+
+    private static void insertHistory(SQLiteDatabase db) {
+        WeatherBatch batch = new WeatherBatch(PLAN_LOCATIONS * PLAN_DAYS);
+        for (int i = 0; i < PLAN_LOCATIONS; i++) {
+            ContentValues location = new ContentValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "plan-" + i);
+            location.put(LocationEntry.COLUMN_CITY_NAME, "Plan " + i);
+            location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488 + i);
+            location.put(LocationEntry.COLUMN_COORD_LONG, -147.353 + i);
+            long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+            assertTrue(locationId != -1);
+            for (int day = 0; day < PLAN_DAYS; day++) {
+                batch.add(locationId, dateOf(day), 800, "Clear", 10 + day % 7, 20 + day % 5,
+                        50, 1013, 3.5, 180);
+            }
+        }
+        WeatherBulkWriter writer = new WeatherBulkWriter(db);
+        db.beginTransaction();
+        try {
+            assertEquals(PLAN_LOCATIONS * PLAN_DAYS, writer.write(batch));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            writer.close();
+        }
+    }
+
+    private static long dateOf(int day) {
+        return TestUtilities.TEST_DATE * 1000 + day * DAY_IN_MILLIS;
+    }
+
+    private static void assertIndexedPlan(SQLiteDatabase db, String sql, String[] selectionArgs,
+                                          boolean expectLocationDateIndex) {
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, selectionArgs);
+        int detailIndex = plan.getColumnIndex("detail");
+        StringBuilder details = new StringBuilder();
+        boolean usesLocationDateIndex = false;
+        while (plan.moveToNext()) {
+            String detail = plan.getString(detailIndex);
+            details.append(detail).append('\n');
+            assertFalse("Error: Full scan of the weather table for " + sql + "\n" + details,
+                    WEATHER_SCAN.matcher(detail).find());
+            usesLocationDateIndex |= detail.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+        }
+        plan.close();
+        if (expectLocationDateIndex) {
+            assertTrue("Error: " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE + " unused for " +
+                    sql + "\n" + details, usesLocationDateIndex);
+        }
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastCache extends AndroidTestCase {
+
+    private ForecastCache mCache;
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(mLocationRowId));
+        mCache = ForecastCache.getInstance(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    // The first read goes to the provider, and every later one is served from memory.
+    public void testHitsAfterFirstRead() {
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+
+        ForecastData first = mCache.get(TestUtilities.TEST_LOCATION);
+        ForecastData second = mCache.get(TestUtilities.TEST_LOCATION);
+
+        assertEquals(misses + 1, mCache.getMissCount());
+        assertEquals(hits + 1, mCache.getHitCount());
+        assertSame("Error: A hit should return the cached forecast", first, second);
+        assertEquals(ForecastData.query(mContext.getContentResolver(),
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION)).count, first.count);
+    }
+
+    // Writing weather through the provider drops what was cached before it.
+    public void testProviderWriteInvalidates() {
+        ForecastData before = mCache.get(TestUtilities.TEST_LOCATION);
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(mLocationRowId);
+        weatherValues.put(WeatherEntry.COLUMN_DATE, before.dates[before.count - 1] + 1000*60*60*24);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        int misses = mCache.getMissCount();
+        ForecastData after = mCache.get(TestUtilities.TEST_LOCATION);
+        assertEquals("Error: The write should have invalidated the cache",
+                misses + 1, mCache.getMissCount());
+        assertEquals(before.count + 1, after.count);
+    }
+
+    // Whatever was loaded before an invalidation is read again afterwards.
+    public void testInvalidateDropsLoaded() {
+        mCache.invalidate();
+        mCache.load(TestUtilities.TEST_LOCATION);
+        mCache.invalidate();
+
+        int misses = mCache.getMissCount();
+        mCache.get(TestUtilities.TEST_LOCATION);
+        assertEquals(misses + 1, mCache.getMissCount());
+    }
+
+    // Slicing the cached forecast agrees with querying the provider from the same day.
+    public void testSinceMatchesStartDateQuery() {
+        ForecastData forecast = mCache.get(TestUtilities.TEST_LOCATION);
+        long startDate = forecast.dates[3];
+
+        ForecastData since = forecast.since(startDate);
+        ForecastData queried = ForecastData.query(mContext.getContentResolver(),
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        startDate));
+        assertEquals(queried.count, since.count);
+        for (int i = 0; i < queried.count; i++) {
+            assertEquals(queried.ids[i], since.ids[i]);
+            assertEquals(queried.dates[i], since.dates[i]);
+            assertEquals(queried.maxTemps[i], since.maxTemps[i], 0);
+        }
+        assertEquals(3, forecast.indexOfDate(startDate));
+        assertEquals(-1, forecast.indexOfDate(forecast.dates[forecast.count - 1] + 1000*60*60*24));
+        assertSame(forecast, forecast.since(forecast.dates[0]));
+        assertTrue(forecast.since(forecast.dates[forecast.count - 1] + 1000*60*60*24).isEmpty());
+        assertEquals(TestUtilities.createNorthPoleLocationValues()
+                .getAsDouble(LocationEntry.COLUMN_COORD_LAT), forecast.latitude, 1e-6);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/**
+ * Reading a location's forecast through {@link ForecastData} against the cursor path the widgets
+ * used before: the same query, then every row read back out of the cursor each time the list
+ * is drawn.  Results are logged under this class's tag.
+ */
+public class TestForecastDataBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastDataBenchmark.class.getSimpleName();
+
+    private static final int ITERATIONS = 200;
+    // How many times a widget list is drawn per load, e.g. while it's scrolled.
+    private static final int PASSES = 4;
+
+    private Uri mForecastUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                TestProvider.createBulkInsertWeatherValues(locationRowId));
+        mForecastUri = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    // Both paths read the same values.
+    public void testMatchesCursor() {
+        ForecastData data = ForecastData.query(mContext.getContentResolver(), mForecastUri);
+        Cursor cursor = mContext.getContentResolver().query(mForecastUri, null, null, null,
+                ForecastData.SORT_ORDER);
+        assertEquals(cursor.getCount(), data.count);
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)),
+                    data.dates[i]);
+            assertEquals(cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_LOC_KEY)),
+                    data.locationIds[i]);
+            assertEquals(cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID)),
+                    data.weatherIds[i]);
+            assertEquals(cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)),
+                    data.descriptions[i]);
+            assertEquals(cursor.getFloat(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)),
+                    data.maxTemps[i], 0);
+            assertEquals(cursor.getFloat(cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP)),
+                    data.minTemps[i], 0);
+            assertEquals(cursor.getFloat(cursor.getColumnIndex(WeatherEntry.COLUMN_WIND_SPEED)),
+                    data.windSpeeds[i], 0);
+        }
+        cursor.close();
+    }
+
+    public void testReadForecast() {
+        // Warm up both paths before timing them.
+        readWithCursor();
+        readWithForecastData();
+
+        long cursorNanos = 0;
+        long forecastDataNanos = 0;
+        double checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            checksum += readWithCursor();
+            cursorNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            checksum -= readWithForecastData();
+            forecastDataNanos += System.nanoTime() - start;
+        }
+        assertEquals("Error: The two paths read different values", 0, checksum, 1e-3);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d loads of %d passes: cursor %.1f us, ForecastData %.1f us per load (%.1fx)",
+                ITERATIONS, PASSES, cursorNanos / 1e3 / ITERATIONS,
+                forecastDataNanos / 1e3 / ITERATIONS, (double) cursorNanos / forecastDataNanos));
+    }
+
+    // What DetailWidgetRemoteViewsService did: hold the cursor, and seek it for every row drawn.
+    private double readWithCursor() {
+        Cursor cursor = mContext.getContentResolver().query(mForecastUri, ForecastData.PROJECTION,
+                null, null, ForecastData.SORT_ORDER);
+        double sum = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int position = 0; position < cursor.getCount(); position++) {
+                cursor.moveToPosition(position);
+                sum += cursor.getLong(ForecastData.INDEX_DATE) % 1000
+                        + cursor.getInt(ForecastData.INDEX_WEATHER_ID)
+                        + cursor.getString(ForecastData.INDEX_SHORT_DESC).length()
+                        + cursor.getFloat(ForecastData.INDEX_MAX_TEMP)
+                        + cursor.getFloat(ForecastData.INDEX_MIN_TEMP);
+            }
+        }
+        cursor.close();
+        return sum;
+    }
+
+    private double readWithForecastData() {
+        ForecastData data = ForecastData.query(mContext.getContentResolver(), mForecastUri);
+        double sum = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int position = 0; position < data.count; position++) {
+                sum += data.dates[position] % 1000
+                        + data.weatherIds[position]
+                        + data.descriptions[position].length()
+                        + data.maxTemps[position]
+                        + data.minTemps[position];
+            }
+        }
+        return sum;
+    }
+}
@@ -16,20 +16,28 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.RemoteException;
 import android.test.AndroidTestCase;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -423,7 +431,7 @@ public class TestProvider extends AndroidTestCase {
 
 
     static private final int BULK_INSERT_RECORDS_TO_INSERT = 10;
-    static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
+    public static ContentValues[] createBulkInsertWeatherValues(long locationRowId) {
         long currentTestDate = TestUtilities.TEST_DATE;
         long millisecondsInADay = 1000*60*60*24;
         ContentValues[] returnContentValues = new ContentValues[BULK_INSERT_RECORDS_TO_INSERT];
@@ -512,4 +520,198 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    // A location, its weather and a purge land in one batch.  Applying it again finds the
+    // location already stored and every weather row unchanged.
+    public void testApplyBatch() throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = createSyncOperations();
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals(operations.size(), results.length);
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        for (int i = 1; i < results.length - 1; i++) {
+            assertFalse("Error: New weather row reported unchanged",
+                    WeatherEntry.isUnchangedUri(results[i].uri));
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationId(locationRowId), null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        results = mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                createSyncOperations());
+        assertEquals("Error: Location inserted twice", locationRowId,
+                ContentUris.parseId(results[0].uri));
+        for (int i = 1; i < results.length - 1; i++) {
+            assertTrue("Error: Unchanged weather row was written again",
+                    WeatherEntry.isUnchangedUri(results[i].uri));
+        }
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    // If any operation fails, none of the batch is stored.
+    public void testApplyBatchRollsBack() throws RemoteException {
+        ArrayList<ContentProviderOperation> operations = createSyncOperations();
+        operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                .withExpectedCount(2)
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                    operations);
+            fail("Error: Failing assertion didn't fail the batch");
+        } catch (OperationApplicationException e) {
+            // expected
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Location kept from a failed batch", 0, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals("Error: Weather kept from a failed batch", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // Weather attached to an operation that doesn't insert a location has nowhere to go.
+    public void testApplyBatchRejectsWeatherWithoutLocation() {
+        ArrayList<ContentProviderOperation> operations = createSyncOperations();
+        SparseArray<WeatherBatch> weather = new SparseArray<WeatherBatch>();
+        WeatherBatch batch = new WeatherBatch(1);
+        batch.add(0, TestUtilities.TEST_DATE, 321, "Asteroids", 65.0, 75.0, 1.2, 1.3, 5.5, 0);
+        // The last operation is the purge, which returns a count rather than a Uri.
+        weather.put(operations.size() - 1, batch);
+
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        try {
+            ((WeatherProvider) client.getLocalContentProvider()).applyBatch(operations, weather);
+            fail("Error: Weather without a location didn't fail the batch");
+        } catch (OperationApplicationException e) {
+            // expected
+        } finally {
+            client.release();
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Location kept from a failed batch", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // What a sync submits for one location.
+    private static ArrayList<ContentProviderOperation> createSyncOperations() {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues values : createBulkInsertWeatherValues(0)) {
+            values.remove(WeatherEntry.COLUMN_LOC_KEY);
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        // The purge of past days, with nothing that old to find.
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?", new String[]{"0"})
+                .build());
+        return operations;
+    }
+
+    // Writing rows that are already stored must leave them alone: nothing is counted, and the
+    // _IDs of rows that did change stay the same.
+    public void testBulkInsertSkipsUnchangedRows() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        int insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, insertCount);
+        long[] ids = queryWeatherIds();
+
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: Unchanged rows were written again", 0, insertCount);
+
+        ContentValues[] changedValues = createBulkInsertWeatherValues(locationRowId);
+        changedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        insertCount = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                changedValues);
+        assertEquals("Error: Only the changed row should be written", 1, insertCount);
+
+        long[] idsAfterUpdate = queryWeatherIds();
+        assertEquals(ids.length, idsAfterUpdate.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals("Error: _ID of row " + i + " changed", ids[i], idsAfterUpdate[i]);
+        }
+
+        Uri unchangedUri = mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId)[0]);
+        assertTrue("Error: Inserting a stored row should report it unchanged",
+                WeatherEntry.isUnchangedUri(unchangedUri));
+        assertEquals(ids[0], ContentUris.parseId(unchangedUri));
+    }
+
+    private long[] queryWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
+
+    // forecast/ Uris return the same rows as the location setting ones, and a location setting
+    // resolves to its new _id once the location is replaced.
+    public void testLocationIdQueries() {
+        long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationIdWithStartDate(locationRowId,
+                        TestUtilities.TEST_DATE),
+                null, null, null, null);
+        TestUtilities.validateCursor("testLocationIdQueries.  Error validating forecast/#",
+                cursor, weatherValues);
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationIdWithDate(locationRowId, TestUtilities.TEST_DATE),
+                null, null, null, null);
+        TestUtilities.validateCursor("testLocationIdQueries.  Error validating forecast/#/#",
+                cursor, weatherValues);
+
+        // Warm the location setting cache, then replace the location under it.
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+        deleteAllRecordsFromProvider();
+
+        long newLocationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+        assertTrue(newLocationRowId != locationRowId);
+        weatherValues = TestUtilities.createWeatherValues(newLocationRowId);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        cursor = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION),
+                null, null, null, null);
+        TestUtilities.validateCursor("testLocationIdQueries.  Stale location _id after delete",
+                cursor, weatherValues);
+    }
 }
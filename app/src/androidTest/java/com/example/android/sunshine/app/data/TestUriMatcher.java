@@ -34,6 +34,9 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_DIR = WeatherContract.WeatherEntry.CONTENT_URI;
     private static final Uri TEST_WEATHER_WITH_LOCATION_DIR = WeatherContract.WeatherEntry.buildWeatherLocation(LOCATION_QUERY);
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
+    // content://com.example.android.sunshine.app/forecast/10"
+    private static final Uri TEST_WEATHER_WITH_LOCATION_ID_DIR = WeatherContract.WeatherEntry.buildWeatherLocationId(TEST_LOCATION_ID);
+    private static final Uri TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationIdWithDate(TEST_LOCATION_ID, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
 
@@ -51,6 +54,10 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_DIR), WeatherProvider.WEATHER_WITH_LOCATION);
         assertEquals("Error: The WEATHER WITH LOCATION AND DATE URI was matched incorrectly.",
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
+        assertEquals("Error: The WEATHER WITH LOCATION ID URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_ID_DIR), WeatherProvider.WEATHER_WITH_LOCATION_ID);
+        assertEquals("Error: The WEATHER WITH LOCATION ID AND DATE URI was matched incorrectly.",
+                testMatcher.match(TEST_WEATHER_WITH_LOCATION_ID_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_ID_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
     }
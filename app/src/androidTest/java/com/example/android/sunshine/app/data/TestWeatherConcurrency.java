@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Forecast reads made while a sync writes.  Readers must not wait on the writer's transaction,
+ * and their latencies under a steady stream of syncs are logged under this class's tag.
+ */
+public class TestWeatherConcurrency extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherConcurrency.class.getSimpleName();
+
+    private static final int LOCATIONS = 10;
+    private static final int DAYS = 16;
+    private static final int READERS = 3;
+    private static final int READS_PER_READER = 200;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private WeatherDbHelper mHelper;
+    private SQLiteDatabase mDb;
+    private long[] mLocationIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mHelper = new WeatherDbHelper(mContext);
+        mDb = mHelper.getWritableDatabase();
+        mLocationIds = insertLocations();
+        write(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testConfiguration() {
+        assertEquals("wal", DatabaseUtils.stringForQuery(mDb, "PRAGMA journal_mode", null));
+        // 1 is NORMAL
+        assertEquals(1, DatabaseUtils.longForQuery(mDb, "PRAGMA synchronous", null));
+        // 2 is MEMORY
+        assertEquals(2, DatabaseUtils.longForQuery(mDb, "PRAGMA temp_store", null));
+    }
+
+    // A read finishes while a sync's transaction is still open, and sees the last commit.
+    public void testReadDuringWriteTransaction() throws InterruptedException {
+        final CountDownLatch written = new CountDownLatch(1);
+        final CountDownLatch read = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                WeatherBulkWriter bulkWriter = new WeatherBulkWriter(mDb);
+                mDb.beginTransaction();
+                try {
+                    bulkWriter.write(createBatch(1));
+                    written.countDown();
+                    read.await(10, TimeUnit.SECONDS);
+                    mDb.setTransactionSuccessful();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    mDb.endTransaction();
+                    bulkWriter.close();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+
+        Cursor cursor = queryForecast(mLocationIds[0]);
+        assertEquals(DAYS, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Error: Read saw the uncommitted sync", 0.0,
+                cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_DEGREES)), 0);
+        cursor.close();
+        read.countDown();
+        writer.join();
+    }
+
+    // Several readers, as the forecast list and the widgets make them, while syncs keep writing.
+    public void testReaderLatencyDuringSync() throws InterruptedException {
+        final AtomicBoolean reading = new AtomicBoolean(true);
+        final int[] syncs = new int[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (reading.get()) {
+                    write(++syncs[0]);
+                }
+            }
+        });
+
+        final long[][] latencies = new long[READERS][READS_PER_READER];
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            final long[] readerLatencies = latencies[r];
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < READS_PER_READER; i++) {
+                        long start = System.nanoTime();
+                        Cursor cursor = queryForecast(mLocationIds[i % LOCATIONS]);
+                        cursor.moveToLast();
+                        cursor.close();
+                        readerLatencies[i] = System.nanoTime() - start;
+                    }
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        reading.set(false);
+        writer.join();
+
+        long[] all = new long[READERS * READS_PER_READER];
+        for (int r = 0; r < READERS; r++) {
+            System.arraycopy(latencies[r], 0, all, r * READS_PER_READER, READS_PER_READER);
+        }
+        Arrays.sort(all);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d reads during %d syncs: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                all.length, syncs[0], percentile(all, 50), percentile(all, 90),
+                percentile(all, 99), all[all.length - 1] / 1e6));
+        assertTrue("Error: No sync ran alongside the readers", syncs[0] > 0);
+    }
+
+    private Cursor queryForecast(long locationId) {
+        return WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(mDb, null,
+                WeatherProvider.sLocationIdSelection, new String[]{Long.toString(locationId)},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    // One sync: every location's forecast, in one transaction.
+    private void write(int seed) {
+        WeatherBulkWriter bulkWriter = new WeatherBulkWriter(mDb);
+        mDb.beginTransaction();
+        try {
+            bulkWriter.write(createBatch(seed));
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            bulkWriter.close();
+        }
+    }
+
+    private WeatherBatch createBatch(int seed) {
+        WeatherBatch batch = new WeatherBatch(LOCATIONS * DAYS);
+        for (long locationId : mLocationIds) {
+            for (int day = 0; day < DAYS; day++) {
+                batch.add(locationId, TestUtilities.TEST_DATE * 1000 + day * DAY_IN_MILLIS, 800,
+                        "Clear", 10 + day % 7, 20 + day % 5, 50, 1013, 3.5, seed);
+            }
+        }
+        return batch;
+    }
+
+    private long[] insertLocations() {
+        long[] ids = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            ContentValues values = new ContentValues();
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, "concurrent-" + i);
+            values.put(LocationEntry.COLUMN_CITY_NAME, "Concurrent " + i);
+            values.put(LocationEntry.COLUMN_COORD_LAT, 64.7488 + i);
+            values.put(LocationEntry.COLUMN_COORD_LONG, -147.353 + i);
+            ids[i] = mDb.insert(LocationEntry.TABLE_NAME, null, values);
+            assertTrue(ids[i] != -1);
+        }
+        return ids;
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        int index = Math.min(sorted.length - 1, sorted.length * percent / 100);
+        return sorted[index] / 1e6;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/**
+ * Rows per second written by the old ContentValues insert loop and by {@link WeatherBulkWriter},
+ * for the batch sizes a sync produces.  Results are logged under this class's tag.
+ */
+public class TestWeatherIngestBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherIngestBenchmark.class.getSimpleName();
+
+    private static final int ITERATIONS = 20;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    // One location, a 14 day forecast: the everyday sync.
+    public void testOneLocationFourteenDays() {
+        benchmark("1 location x 14 days", 1, 14);
+    }
+
+    // 16 days of hourly data, 16 x 24 rows.  The table keeps one row per day, so each row gets
+    // a day of its own.
+    public void testOneLocationSixteenDaysHourly() {
+        benchmark("1 location x 16 x 24", 1, 16 * 24);
+    }
+
+    // Ten saved locations, 16 days each.
+    public void testTenLocationsSixteenDays() {
+        benchmark("10 locations x 16 days", 10, 16);
+    }
+
+    // The arithmetic normalization must land on the same day start as the Time based one,
+    // including across daylight saving changes.
+    public void testNormalizeDateMatchesTime() {
+        long start = TestUtilities.TEST_DATE * 1000;
+        long end = start + 2 * 365 * DAY_IN_MILLIS;
+        for (long date = start; date < end; date += DAY_IN_MILLIS / 7) {
+            assertEquals("Error: normalizeDate differs for " + date,
+                    normalizeDateWithTime(date), WeatherContract.normalizeDate(date));
+        }
+    }
+
+    private void benchmark(String name, int locationCount, int daysPerLocation) {
+        long[] locationIds = insertLocations(locationCount);
+        int rowCount = locationCount * daysPerLocation;
+
+        long legacyNanos = 0;
+        long bulkNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            // Each run writes into an empty table, the way the old code always did.
+            mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+            ContentValues[] values = createValues(locationIds, daysPerLocation, i);
+            long start = System.nanoTime();
+            insertLegacy(values);
+            legacyNanos += System.nanoTime() - start;
+            assertEquals(rowCount, countWeatherRows());
+
+            mDb.delete(WeatherEntry.TABLE_NAME, null, null);
+            WeatherBatch batch = createBatch(locationIds, daysPerLocation, i);
+            start = System.nanoTime();
+            int written = insertBulk(batch);
+            bulkNanos += System.nanoTime() - start;
+            assertEquals(rowCount, written);
+            assertEquals(rowCount, countWeatherRows());
+        }
+
+        double legacyRate = rowCount * ITERATIONS / (legacyNanos / 1e9);
+        double bulkRate = rowCount * ITERATIONS / (bulkNanos / 1e9);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%s: %.0f rows/s before, %.0f rows/s after (%.1fx)", name, legacyRate, bulkRate, bulkRate / legacyRate));
+    }
+
+    // What WeatherProvider.bulkInsert used to do.
+    private void insertLegacy(ContentValues[] values) {
+        mDb.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                long date = value.getAsLong(WeatherEntry.COLUMN_DATE);
+                value.put(WeatherEntry.COLUMN_DATE, normalizeDateWithTime(date));
+                mDb.insert(WeatherEntry.TABLE_NAME, null, value);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private int insertBulk(WeatherBatch batch) {
+        WeatherBulkWriter writer = new WeatherBulkWriter(mDb);
+        mDb.beginTransaction();
+        try {
+            int written = writer.write(batch);
+            mDb.setTransactionSuccessful();
+            return written;
+        } finally {
+            mDb.endTransaction();
+            writer.close();
+        }
+    }
+
+    // The Time based normalization WeatherContract.normalizeDate used before.
+    private static long normalizeDateWithTime(long startDate) {
+        Time time = new Time();
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    private long[] insertLocations(int count) {
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(LocationEntry.COLUMN_LOCATION_SETTING, "bench-" + i);
+            values.put(LocationEntry.COLUMN_CITY_NAME, "Bench " + i);
+            values.put(LocationEntry.COLUMN_COORD_LAT, 64.7488 + i);
+            values.put(LocationEntry.COLUMN_COORD_LONG, -147.353 + i);
+            ids[i] = mDb.insert(LocationEntry.TABLE_NAME, null, values);
+            assertTrue(ids[i] != -1);
+        }
+        return ids;
+    }
+
+    private static ContentValues[] createValues(long[] locationIds, int days, int seed) {
+        ContentValues[] values = new ContentValues[locationIds.length * days];
+        int row = 0;
+        for (long locationId : locationIds) {
+            for (int day = 0; day < days; day++, row++) {
+                ContentValues value = new ContentValues();
+                value.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+                value.put(WeatherEntry.COLUMN_DATE, dateOf(day));
+                value.put(WeatherEntry.COLUMN_DEGREES, 1.1 + seed);
+                value.put(WeatherEntry.COLUMN_HUMIDITY, 1.2 + 0.01 * day);
+                value.put(WeatherEntry.COLUMN_PRESSURE, 1.3 - 0.01 * day);
+                value.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day);
+                value.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - day);
+                value.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+                value.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5 + 0.2 * day);
+                value.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+                values[row] = value;
+            }
+        }
+        return values;
+    }
+
+    private static WeatherBatch createBatch(long[] locationIds, int days, int seed) {
+        WeatherBatch batch = new WeatherBatch(locationIds.length * days);
+        for (long locationId : locationIds) {
+            for (int day = 0; day < days; day++) {
+                batch.add(locationId, dateOf(day), 321, "Asteroids", 65 - day, 75 + day,
+                        1.2 + 0.01 * day, 1.3 - 0.01 * day, 5.5 + 0.2 * day, 1.1 + seed);
+            }
+        }
+        return batch;
+    }
+
+    private static long dateOf(int day) {
+        // Midday, so that normalization has something to do.
+        return TestUtilities.TEST_DATE * 1000 + day * DAY_IN_MILLIS + DAY_IN_MILLIS / 2;
+    }
+
+    private long countWeatherRows() {
+        return DatabaseUtils.queryNumEntries(mDb, WeatherEntry.TABLE_NAME);
+    }
+}
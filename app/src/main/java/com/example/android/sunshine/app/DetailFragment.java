@@ -16,12 +16,10 @@
 package com.example.android.sunshine.app;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
@@ -38,13 +36,14 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.example.android.sunshine.app.data.ForecastData;
 import com.example.android.sunshine.app.data.WeatherContract;
-import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<ForecastData> {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -55,38 +54,11 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The forecast last loaded, which every day shown is bound from.
+    private ForecastData mData;
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
-            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
-            WeatherEntry.COLUMN_DATE,
-            WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherEntry.COLUMN_HUMIDITY,
-            WeatherEntry.COLUMN_PRESSURE,
-            WeatherEntry.COLUMN_WIND_SPEED,
-            WeatherEntry.COLUMN_DEGREES,
-            WeatherEntry.COLUMN_WEATHER_ID,
-            // This works because the WeatherProvider returns location data joined with
-            // weather data, even though they're stored in two different tables.
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
-    };
-
-    // These indices are tied to DETAIL_COLUMNS.  If DETAIL_COLUMNS changes, these
-    // must change.
-    public static final int COL_WEATHER_ID = 0;
-    public static final int COL_WEATHER_DATE = 1;
-    public static final int COL_WEATHER_DESC = 2;
-    public static final int COL_WEATHER_MAX_TEMP = 3;
-    public static final int COL_WEATHER_MIN_TEMP = 4;
-    public static final int COL_WEATHER_HUMIDITY = 5;
-    public static final int COL_WEATHER_PRESSURE = 6;
-    public static final int COL_WEATHER_WIND_SPEED = 7;
-    public static final int COL_WEATHER_DEGREES = 8;
-    public static final int COL_WEATHER_CONDITION_ID = 9;
-
     private ImageView mIconView;
     private TextView mDateView;
     private TextView mDescriptionView;
@@ -112,6 +84,10 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             mUri = arguments.getParcelable(DetailFragment.DETAIL_URI);
             mTransitionAnimation = arguments.getBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, false);
         }
+        // showDate may have moved on from the day in the arguments.
+        if (savedInstanceState != null && savedInstanceState.containsKey(DETAIL_URI)) {
+            mUri = savedInstanceState.getParcelable(DETAIL_URI);
+        }
 
         View rootView = inflater.inflate(R.layout.fragment_detail_start, container, false);
         mIconView = (ImageView) rootView.findViewById(R.id.detail_icon);
@@ -157,6 +133,36 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         super.onActivityCreated(savedInstanceState);
     }
 
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        if (null != mUri) {
+            outState.putParcelable(DETAIL_URI, mUri);
+        }
+        super.onSaveInstanceState(outState);
+    }
+
+    /**
+     * Shows another day of the preferred location.  Once the forecast has loaded, days are bound
+     * straight from it, so picking one in the two-pane layout needs neither a query nor a new
+     * fragment.
+     */
+    void showDate(Uri uri) {
+        mUri = uri;
+        if (null == mData) {
+            // Nothing was loaded while there was no day to show.
+            getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            return;
+        }
+        bindDay();
+        Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
+        if (null != toolbarView) {
+            MenuItem shareItem = toolbarView.getMenu().findItem(R.id.action_share);
+            if (null != shareItem) {
+                shareItem.setIntent(createShareForecastIntent());
+            }
+        }
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -164,23 +170,18 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
+            mData = null;
             getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
         }
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+    public Loader<ForecastData> onCreateLoader(int id, Bundle args) {
         if ( null != mUri ) {
-            // Now create and return a CursorLoader that will take care of
-            // creating a Cursor for the data being displayed.
-            return new CursorLoader(
-                    getActivity(),
-                    mUri,
-                    DETAIL_COLUMNS,
-                    null,
-                    null,
-                    null
-            );
+            // The list has most likely loaded this forecast already, so the day shown here
+            // comes out of memory.  mUri may be keyed on the location's _id, but it is always
+            // a day of the preferred location.
+            return new ForecastLoader(getActivity(), Utility.getPreferredLocation(getActivity()));
         }
         ViewParent vp = getView().getParent();
         if ( vp instanceof CardView ) {
@@ -190,15 +191,45 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
+    public void onLoadFinished(Loader<ForecastData> loader, ForecastData data) {
+        mData = data;
+        bindDay();
+        AppCompatActivity activity = (AppCompatActivity)getActivity();
+        Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
+
+        // We need to start the enter transition after the data has loaded
+        if ( mTransitionAnimation ) {
+            activity.supportStartPostponedEnterTransition();
+
+            if ( null != toolbarView ) {
+                activity.setSupportActionBar(toolbarView);
+
+                activity.getSupportActionBar().setDisplayShowTitleEnabled(false);
+                activity.getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            }
+        } else {
+            if ( null != toolbarView ) {
+                Menu menu = toolbarView.getMenu();
+                if ( null != menu ) menu.clear();
+                toolbarView.inflateMenu(R.menu.detailfragment);
+                finishCreatingMenu(toolbarView.getMenu());
+            }
+        }
+    }
+
+    // Binds the day mUri names from mData, if the forecast has it.
+    private void bindDay() {
+        if (null == mData || null == mUri) {
+            return;
+        }
+        int day = mData.indexOfDate(WeatherContract.WeatherEntry.getDateFromUri(mUri));
+        if (day != -1) {
             ViewParent vp = getView().getParent();
             if ( vp instanceof CardView ) {
                 ((View)vp).setVisibility(View.VISIBLE);
             }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
+            int weatherId = mData.weatherIds[day];
 
             if ( Utility.usingLocalGraphics(getActivity()) ) {
                 mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
@@ -207,12 +238,14 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
                 Glide.with(this)
                         .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
                         .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                        // Keeps the downloaded original too, which the prefetch fills.
+                        .diskCacheStrategy(DiskCacheStrategy.ALL)
                         .crossFade()
                         .into(mIconView);
             }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
+            // Update views for day of week and date
+            long date = mData.dates[day];
             String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
             mDateView.setText(dateText);
 
@@ -227,35 +260,35 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             // has text describing it in the same UI component.
             mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
 
-            // Read high temperature from cursor and update view
+            // Update the high temperature view
             boolean isMetric = Utility.isMetric(getActivity());
 
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
+            double high = mData.maxTemps[day];
             String highString = Utility.formatTemperature(getActivity(), high);
             mHighTempView.setText(highString);
             mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
 
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
+            // Update the low temperature view
+            double low = mData.minTemps[day];
             String lowString = Utility.formatTemperature(getActivity(), low);
             mLowTempView.setText(lowString);
             mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
 
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
+            // Update the humidity view
+            float humidity = mData.humidity[day];
             mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
             mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
             mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
 
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
+            // Update the wind speed and direction view
+            float windSpeedStr = mData.windSpeeds[day];
+            float windDirStr = mData.degrees[day];
             mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
             mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
             mWindLabelView.setContentDescription(mWindView.getContentDescription());
 
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
+            // Update the pressure view
+            float pressure = mData.pressure[day];
             mPressureView.setText(getString(R.string.format_pressure, pressure));
             mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
             mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
@@ -263,30 +296,31 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             // We still need this for the share intent
             mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
 
+            prefetchNeighbours(day);
         }
-        AppCompatActivity activity = (AppCompatActivity)getActivity();
-        Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
-
-        // We need to start the enter transition after the data has loaded
-        if ( mTransitionAnimation ) {
-            activity.supportStartPostponedEnterTransition();
-
-            if ( null != toolbarView ) {
-                activity.setSupportActionBar(toolbarView);
+    }
 
-                activity.getSupportActionBar().setDisplayShowTitleEnabled(false);
-                activity.getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+    // The days either side are the likeliest to be picked next, so their art is downloaded
+    // ahead of time, and picking one reads it from disk rather than the network.
+    private void prefetchNeighbours(int day) {
+        if (Utility.usingLocalGraphics(getActivity())) {
+            return;
+        }
+        int size = getResources().getDimensionPixelSize(R.dimen.today_icon);
+        for (int neighbour = day - 1; neighbour <= day + 1; neighbour += 2) {
+            if (neighbour < 0 || neighbour >= mData.count) {
+                continue;
             }
-        } else {
-            if ( null != toolbarView ) {
-                Menu menu = toolbarView.getMenu();
-                if ( null != menu ) menu.clear();
-                toolbarView.inflateMenu(R.menu.detailfragment);
-                finishCreatingMenu(toolbarView.getMenu());
+            String artUrl = Utility.getArtUrlForWeatherCondition(getActivity(),
+                    mData.weatherIds[neighbour]);
+            if (null != artUrl) {
+                Glide.with(this).load(artUrl).downloadOnly(size, size);
             }
         }
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) { }
+    public void onLoaderReset(Loader<ForecastData> loader) {
+        mData = null;
+    }
 }
\ No newline at end of file
@@ -16,10 +16,11 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -30,11 +31,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.ForecastData;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link ForecastData} to a {@link android.support.v7.widget.RecyclerView}.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -44,7 +45,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private ForecastData mForecast = ForecastData.EMPTY;
+    private ForecastRow[] mRows = ForecastRow.EMPTY;
+    // The forecast last asked for, shown once its rows are ready.
+    private ForecastData mLatestForecast = ForecastData.EMPTY;
+    // Run once the latest forecast is shown.
+    private Runnable mOnSwapped;
+    // Bumped by every update, so that rows finishing after a newer update are thrown away.
+    private int mSwapGeneration;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,21 +81,27 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            // A click can land while the item is being removed or before a new forecast is laid
+            // out.
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mForecast.dates[adapterPosition],
+                    mForecast.locationIds[adapterPosition], this);
             mICM.onClick(this);
         }
     }
 
     public static interface ForecastAdapterOnClickHandler {
-        void onClick(Long date, ForecastAdapterViewHolder vh);
+        void onClick(Long date, long locationId, ForecastAdapterViewHolder vh);
     }
 
     public ForecastAdapter(Context context, ForecastAdapterOnClickHandler dh, View emptyView, int choiceMode) {
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Must come before the ItemChoiceManager registers its observer.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,63 +138,34 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
-        int defaultImage;
-        boolean useLongToday;
-
-        switch (getItemViewType(position)) {
-            case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
-                break;
-            default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
-        }
+        ForecastRow row = mRows[position];
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
-            forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
+        if ( null == row.artUrl ) {
+            forecastAdapterViewHolder.mIconView.setImageResource(row.imageResource);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
+                    .load(row.artUrl)
+                    .error(row.imageResource)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.transitionName);
 
-        // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
-
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
-
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        forecastAdapterViewHolder.mDateView.setText(row.dateText);
 
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(
+                row.descriptionContentDescription);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.high);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highContentDescription);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.low);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowContentDescription);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -194,7 +179,13 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
-        mUseTodayLayout = useTodayLayout;
+        if (mUseTodayLayout != useTodayLayout) {
+            mUseTodayLayout = useTodayLayout;
+            if (mRows.length > 0 || mLatestForecast != mForecast) {
+                // The first row, shown or on its way, is formatted for the other layout.
+                update(mLatestForecast);
+            }
+        }
     }
 
     public int getSelectedItemPosition() {
@@ -208,18 +199,72 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public int getItemCount() {
-        if ( null == mCursor ) return 0;
-        return mCursor.getCount();
+        return mRows.length;
+    }
+
+    // A location has one row per day, and a day keeps its row when the sync rewrites it.
+    @Override
+    public long getItemId(int position) {
+        return mRows[position].date;
     }
 
-    public void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
-        notifyDataSetChanged();
-        mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    /**
+     * Shows a new forecast.  Its rows are formatted off the main thread and compared there with
+     * the ones shown, and then only the days that look different are rebound.  The list keeps
+     * the old forecast until then.
+     *
+     * @param onSwapped run on the main thread once the list shows the forecast, or null.  It is
+     *                  dropped if another forecast is swapped in first.
+     */
+    public void swapForecast(ForecastData forecast, Runnable onSwapped) {
+        mOnSwapped = onSwapped;
+        // Even the forecast shown is formatted again: a change of units or art pack reloads it
+        // unchanged.
+        update(forecast != null ? forecast : ForecastData.EMPTY);
     }
 
-    public Cursor getCursor() {
-        return mCursor;
+    private void update(final ForecastData forecast) {
+        mLatestForecast = forecast;
+        final ForecastRow[] oldRows = mRows;
+        final boolean useTodayLayout = mUseTodayLayout;
+        final int generation = ++mSwapGeneration;
+        new AsyncTask<Void, Void, DiffUtil.DiffResult>() {
+            private ForecastRow[] mNewRows;
+
+            @Override
+            protected DiffUtil.DiffResult doInBackground(Void... params) {
+                mNewRows = ForecastRow.fromForecast(mContext, forecast, useTodayLayout);
+                if (oldRows.length == 0 || mNewRows.length == 0) {
+                    // Nothing to keep; every row is new, or gone.
+                    return null;
+                }
+                return DiffUtil.calculateDiff(new ForecastDiffCallback(oldRows, mNewRows), false);
+            }
+
+            @Override
+            protected void onPostExecute(DiffUtil.DiffResult result) {
+                if (generation != mSwapGeneration) {
+                    return;
+                }
+                mForecast = forecast;
+                mRows = mNewRows;
+                if (null == result) {
+                    notifyDataSetChanged();
+                } else {
+                    result.dispatchUpdatesTo(ForecastAdapter.this);
+                }
+                mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
+                Runnable onSwapped = mOnSwapped;
+                mOnSwapped = null;
+                if (null != onSwapped) {
+                    onSwapped.run();
+                }
+            }
+        }.execute();
+    }
+
+    public ForecastData getForecast() {
+        return mForecast;
     }
 
     public void selectView(RecyclerView.ViewHolder viewHolder) {
@@ -228,4 +273,38 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
             vfh.onClick(vfh.itemView);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Compares two lists of rows of the same location day by day.
+     */
+    static class ForecastDiffCallback extends DiffUtil.Callback {
+        private final ForecastRow[] mOld;
+        private final ForecastRow[] mNew;
+
+        ForecastDiffCallback(ForecastRow[] oldRows, ForecastRow[] newRows) {
+            mOld = oldRows;
+            mNew = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOld.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNew.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOld[oldPosition].date == mNew[newPosition].date;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            // Covers the day names moving on with today, and a change of units or art pack.
+            return mOld[oldPosition].looksLike(mNew[newPosition]);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.ForecastCache;
+import com.example.android.sunshine.app.data.ForecastData;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Loads a location's forecast from today on out of the {@link ForecastCache}, and loads it
+ * again whenever the stored weather changes, much as a CursorLoader would requery.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastData> {
+
+    private final String mLocationSetting;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private boolean mObserving;
+    private ForecastData mForecast;
+
+    public ForecastLoader(Context context, String locationSetting) {
+        super(context);
+        mLocationSetting = locationSetting;
+    }
+
+    @Override
+    public ForecastData loadInBackground() {
+        return ForecastCache.getInstance(getContext()).get(mLocationSetting)
+                .since(System.currentTimeMillis());
+    }
+
+    @Override
+    public void deliverResult(ForecastData forecast) {
+        if (isReset()) {
+            return;
+        }
+        mForecast = forecast;
+        if (isStarted()) {
+            super.deliverResult(forecast);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            mObserving = true;
+        }
+        if (mForecast != null) {
+            deliverResult(mForecast);
+        }
+        if (takeContentChanged() || mForecast == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mForecast = null;
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+    }
+}
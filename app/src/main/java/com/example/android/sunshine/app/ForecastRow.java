@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.data.ForecastData;
+
+/**
+ * One day of the forecast list, with every string it shows already formatted.
+ * <p>
+ * {@link ForecastAdapter} builds the rows off the main thread each time the forecast, the units
+ * or the art pack change, so binding a row is only a matter of handing these to its views.
+ */
+public final class ForecastRow {
+
+    public static final ForecastRow[] EMPTY = new ForecastRow[0];
+
+    public final long date;
+    // Shown when using local graphics, and while the art is loading otherwise.
+    public final int imageResource;
+    // null when using local graphics.
+    public final String artUrl;
+    public final String transitionName;
+    public final String dateText;
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String high;
+    public final String highContentDescription;
+    public final String low;
+    public final String lowContentDescription;
+
+    private ForecastRow(Context context, ForecastData forecast, int position, boolean today,
+                        boolean localGraphics) {
+        int weatherId = forecast.weatherIds[position];
+        date = forecast.dates[position];
+        imageResource = today
+                ? Utility.getArtResourceForWeatherCondition(weatherId)
+                : Utility.getIconResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+        // this enables better animations. even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view
+        transitionName = "iconView" + position;
+        dateText = Utility.getFriendlyDayString(context, date, today);
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+        high = Utility.formatTemperature(context, forecast.maxTemps[position]);
+        highContentDescription = context.getString(R.string.a11y_high_temp, high);
+        low = Utility.formatTemperature(context, forecast.minTemps[position]);
+        lowContentDescription = context.getString(R.string.a11y_low_temp, low);
+    }
+
+    /**
+     * Formats every day of a forecast.  Does resource and preference lookups, so keep it off the
+     * main thread.
+     *
+     * @param useTodayLayout whether the first day is shown in the larger "today" layout
+     */
+    public static ForecastRow[] fromForecast(Context context, ForecastData forecast,
+                                             boolean useTodayLayout) {
+        if (forecast.isEmpty()) {
+            return EMPTY;
+        }
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ForecastRow[] rows = new ForecastRow[forecast.count];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new ForecastRow(context, forecast, i, i == 0 && useTodayLayout,
+                    localGraphics);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns whether the two rows would look the same on screen.
+     */
+    public boolean looksLike(ForecastRow other) {
+        return imageResource == other.imageResource
+                && TextUtils.equals(artUrl, other.artUrl)
+                && transitionName.equals(other.transitionName)
+                && dateText.equals(other.dateText)
+                && description.equals(other.description)
+                && high.equals(other.high)
+                && low.equals(other.low);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats forecast dates for one locale and time zone, for {@link Utility}'s date helpers.
+ * <p>
+ * The formatters are made once, and where today, tomorrow and the coming week begin is worked
+ * out once a day, the first time a date is formatted after midnight.  A change of locale or time
+ * zone needs a new instance; {@link Utility} makes one when the system says so.  Plain Java, so
+ * it can be tested and measured off the device.
+ */
+public final class FriendlyDateFormatter {
+
+    private final Locale mLocale;
+    private final String mToday;
+    private final String mTomorrow;
+    private final String mFullFriendlyFormat;
+
+    // Guarded by this, as are the formatters, which aren't thread safe.
+    private final Calendar mCalendar;
+    private final SimpleDateFormat mDayNameFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+    private final SimpleDateFormat mShortenedDateFormat;
+    private final DateFormat mDateFormat;
+    private final Date mDate = new Date();
+    private long mTodayStart;
+    private long mTomorrowStart;
+    private long mDayAfterTomorrowStart;
+    private long mWeekEnd;
+
+    /**
+     * @param today              what to call today, e.g. "Today"
+     * @param tomorrow           what to call tomorrow
+     * @param fullFriendlyFormat the format of a day name followed by its month and day
+     */
+    public FriendlyDateFormatter(Locale locale, TimeZone timeZone, String today, String tomorrow,
+                                 String fullFriendlyFormat) {
+        mLocale = locale;
+        mToday = today;
+        mTomorrow = tomorrow;
+        mFullFriendlyFormat = fullFriendlyFormat;
+        mCalendar = Calendar.getInstance(timeZone, locale);
+        mDayNameFormat = newFormat("EEEE", locale, timeZone);
+        mMonthDayFormat = newFormat("MMMM dd", locale, timeZone);
+        mShortenedDateFormat = newFormat("EEE MMM dd", locale, timeZone);
+        mDateFormat = DateFormat.getDateInstance(DateFormat.DEFAULT, locale);
+        mDateFormat.setTimeZone(timeZone);
+    }
+
+    private static SimpleDateFormat newFormat(String pattern, Locale locale, TimeZone timeZone) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, locale);
+        format.setTimeZone(timeZone);
+        return format;
+    }
+
+    /**
+     * "Today, June 8" for today if {@code displayLongToday}, the day name for the rest of the
+     * coming week, and "Mon Jun 8" after that.
+     */
+    public String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        return getFriendlyDayString(dateInMillis, displayLongToday, System.currentTimeMillis());
+    }
+
+    synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday,
+                                             long now) {
+        updateDays(now);
+        if (displayLongToday && isToday(dateInMillis)) {
+            return String.format(mFullFriendlyFormat, mToday, getFormattedMonthDay(dateInMillis));
+        } else if (dateInMillis < mWeekEnd) {
+            return getDayName(dateInMillis, now);
+        } else {
+            return format(mShortenedDateFormat, dateInMillis);
+        }
+    }
+
+    /**
+     * The day name followed by the month and day, e.g. "Tomorrow, June 9".
+     */
+    public String getFullFriendlyDayString(long dateInMillis) {
+        return getFullFriendlyDayString(dateInMillis, System.currentTimeMillis());
+    }
+
+    synchronized String getFullFriendlyDayString(long dateInMillis, long now) {
+        return String.format(mFullFriendlyFormat, getDayName(dateInMillis, now),
+                getFormattedMonthDay(dateInMillis));
+    }
+
+    /**
+     * "Today", "Tomorrow", or the day of the week.
+     */
+    public String getDayName(long dateInMillis) {
+        return getDayName(dateInMillis, System.currentTimeMillis());
+    }
+
+    synchronized String getDayName(long dateInMillis, long now) {
+        updateDays(now);
+        if (isToday(dateInMillis)) {
+            return mToday;
+        } else if (dateInMillis >= mTomorrowStart && dateInMillis < mDayAfterTomorrowStart) {
+            return mTomorrow;
+        } else {
+            return format(mDayNameFormat, dateInMillis);
+        }
+    }
+
+    /**
+     * The month and day, e.g. "June 24".
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        return format(mMonthDayFormat, dateInMillis);
+    }
+
+    /**
+     * The date in the locale's default style.
+     */
+    public synchronized String formatDate(long dateInMillis) {
+        return format(mDateFormat, dateInMillis);
+    }
+
+    public Locale getLocale() {
+        return mLocale;
+    }
+
+    private boolean isToday(long dateInMillis) {
+        return dateInMillis >= mTodayStart && dateInMillis < mTomorrowStart;
+    }
+
+    private String format(DateFormat format, long dateInMillis) {
+        mDate.setTime(dateInMillis);
+        return format.format(mDate);
+    }
+
+    // Moves today and the days after it on, once today is over.
+    private void updateDays(long now) {
+        if (now >= mTodayStart && now < mTomorrowStart) {
+            return;
+        }
+        mCalendar.setTimeInMillis(now);
+        mCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        mCalendar.set(Calendar.MINUTE, 0);
+        mCalendar.set(Calendar.SECOND, 0);
+        mCalendar.set(Calendar.MILLISECOND, 0);
+        mTodayStart = mCalendar.getTimeInMillis();
+        // Days aren't all 24 hours long, so step through the calendar rather than add millis.
+        mCalendar.add(Calendar.DAY_OF_MONTH, 1);
+        mTomorrowStart = mCalendar.getTimeInMillis();
+        mCalendar.add(Calendar.DAY_OF_MONTH, 1);
+        mDayAfterTomorrowStart = mCalendar.getTimeInMillis();
+        mCalendar.add(Calendar.DAY_OF_MONTH, 5);
+        mWeekEnd = mCalendar.getTimeInMillis();
+    }
+}
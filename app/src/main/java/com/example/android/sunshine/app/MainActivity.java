@@ -153,7 +153,16 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
-            // In two-pane mode, show the detail view in this activity by
+            // The detail fragment already showing has the forecast loaded, so it can
+            // simply move to the new day.
+            DetailFragment df = (DetailFragment)getSupportFragmentManager()
+                    .findFragmentByTag(DETAILFRAGMENT_TAG);
+            if (null != df && null != df.getView()) {
+                df.showDate(contentUri);
+                return;
+            }
+
+            // Otherwise show the detail view in this activity by
             // adding or replacing the detail fragment using a
             // fragment transaction.
             Bundle args = new Bundle();
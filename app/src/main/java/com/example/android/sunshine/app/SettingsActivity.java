@@ -25,6 +25,7 @@ import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceManager;
 
+import com.example.android.sunshine.app.data.ChangeNotifier;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
@@ -138,14 +139,19 @@ public class SettingsActivity extends PreferenceActivity
             SunshineSyncAdapter.syncImmediately(this);
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            ChangeNotifier.getInstance(this).notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
             // art pack have changed. update lists of weather entries accordingly
-            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            ChangeNotifier.getInstance(this).notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        } else if ( key.equals(getString(R.string.pref_sync_all_locations_key)) ) {
+            // saved locations are now part of the sync, bring them up to date right away
+            if ( sharedPreferences.getBoolean(key, false) ) {
+                SunshineSyncAdapter.syncImmediately(this);
+            }
         }
     }
 
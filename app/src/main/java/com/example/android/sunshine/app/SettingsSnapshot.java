@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The settings the list, the widgets and the notification format with, read once.
+ * <p>
+ * {@link Utility}'s helpers are called for every row bound, so rather than look each setting up
+ * in the preferences every time, they read the current snapshot's fields.  A new snapshot is read
+ * whenever a preference changes; the listener is told on the main thread, just after the change
+ * is made.
+ */
+public final class SettingsSnapshot {
+
+    public final String locationSetting;
+    public final boolean metric;
+    // The format of an art pack's image urls.
+    public final String artPack;
+    public final boolean localGraphics;
+
+    private static volatile SettingsSnapshot sCurrent;
+    // SharedPreferences only keeps weak references to its listeners, so this one is held here.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private static final AtomicInteger sReadCount = new AtomicInteger();
+    private static final AtomicInteger sLoadCount = new AtomicInteger();
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        locationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        localGraphics = artPack.equals(sunshineArtPack);
+    }
+
+    /**
+     * Returns the current settings.  Only the first call reads the preferences.
+     */
+    public static SettingsSnapshot get(Context context) {
+        sReadCount.incrementAndGet();
+        SettingsSnapshot current = sCurrent;
+        if (current != null) {
+            return current;
+        }
+        return load(context.getApplicationContext());
+    }
+
+    private static synchronized SettingsSnapshot load(final Context context) {
+        if (sCurrent != null) {
+            return sCurrent;
+        }
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                sLoadCount.incrementAndGet();
+                sCurrent = new SettingsSnapshot(context, prefs);
+            }
+        };
+        prefs.registerOnSharedPreferenceChangeListener(sListener);
+        sLoadCount.incrementAndGet();
+        sCurrent = new SettingsSnapshot(context, prefs);
+        return sCurrent;
+    }
+
+    /**
+     * Returns the number of times settings were asked for.
+     */
+    @VisibleForTesting
+    static int getReadCount() {
+        return sReadCount.get();
+    }
+
+    /**
+     * Returns the number of times settings were actually read from the preferences.
+     */
+    @VisibleForTesting
+    static int getLoadCount() {
+        return sLoadCount.get();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.util.Locale;
+
+/**
+ * What to show for each OpenWeatherMap condition id, looked up in tables built once rather than
+ * worked out by range checks on every call.  Backs {@link Utility}'s weather condition helpers.
+ * <p>
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    // Ids are three digits.
+    static final int ID_COUNT = 1000;
+
+    // The kinds of weather that have their own icon and art.  NONE has neither.
+    private static final int NONE = 0;
+    private static final int STORM = 1;
+    private static final int LIGHT_RAIN = 2;
+    private static final int RAIN = 3;
+    private static final int SNOW = 4;
+    private static final int FOG = 5;
+    private static final int CLEAR = 6;
+    private static final int LIGHT_CLOUDS = 7;
+    private static final int CLOUDS = 8;
+
+    // Indexed by kind.
+    private static final String[] ICON_NAMES = {
+            "", "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+    private static final int[] ICON_RESOURCES = {
+            -1, R.drawable.ic_storm, R.drawable.ic_light_rain, R.drawable.ic_rain,
+            R.drawable.ic_snow, R.drawable.ic_fog, R.drawable.ic_clear,
+            R.drawable.ic_light_clouds, R.drawable.ic_cloudy
+    };
+    private static final int[] ART_RESOURCES = {
+            -1, R.drawable.art_storm, R.drawable.art_light_rain, R.drawable.art_rain,
+            R.drawable.art_snow, R.drawable.art_fog, R.drawable.art_clear,
+            R.drawable.art_light_clouds, R.drawable.art_clouds
+    };
+    private static final String[] IMAGE_URLS = {
+            null,
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+    // Dust whirls get the art of a storm rather than of fog.
+    private static final String SQUALLS_IMAGE_URL =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+
+    // Indexed by id.
+    private static final byte[] KINDS = new byte[ID_COUNT];
+    private static final int[] STRING_RESOURCES = new int[ID_COUNT];
+
+    static {
+        setKind(200, 232, STORM);
+        setKind(300, 321, LIGHT_RAIN);
+        setKind(500, 504, RAIN);
+        setKind(511, 511, SNOW);
+        setKind(520, 531, RAIN);
+        setKind(600, 622, SNOW);
+        setKind(701, 761, FOG);
+        setKind(781, 781, STORM);
+        setKind(800, 800, CLEAR);
+        setKind(801, 801, LIGHT_CLOUDS);
+        setKind(802, 804, CLOUDS);
+
+        for (int id = 200; id <= 232; id++) {
+            STRING_RESOURCES[id] = R.string.condition_2xx;
+        }
+        for (int id = 300; id <= 321; id++) {
+            STRING_RESOURCES[id] = R.string.condition_3xx;
+        }
+        STRING_RESOURCES[500] = R.string.condition_500;
+        STRING_RESOURCES[501] = R.string.condition_501;
+        STRING_RESOURCES[502] = R.string.condition_502;
+        STRING_RESOURCES[503] = R.string.condition_503;
+        STRING_RESOURCES[504] = R.string.condition_504;
+        STRING_RESOURCES[511] = R.string.condition_511;
+        STRING_RESOURCES[520] = R.string.condition_520;
+        STRING_RESOURCES[531] = R.string.condition_531;
+        STRING_RESOURCES[600] = R.string.condition_600;
+        STRING_RESOURCES[601] = R.string.condition_601;
+        STRING_RESOURCES[602] = R.string.condition_602;
+        STRING_RESOURCES[611] = R.string.condition_611;
+        STRING_RESOURCES[612] = R.string.condition_612;
+        STRING_RESOURCES[615] = R.string.condition_615;
+        STRING_RESOURCES[616] = R.string.condition_616;
+        STRING_RESOURCES[620] = R.string.condition_620;
+        STRING_RESOURCES[621] = R.string.condition_621;
+        STRING_RESOURCES[622] = R.string.condition_622;
+        STRING_RESOURCES[701] = R.string.condition_701;
+        STRING_RESOURCES[711] = R.string.condition_711;
+        STRING_RESOURCES[721] = R.string.condition_721;
+        STRING_RESOURCES[731] = R.string.condition_731;
+        STRING_RESOURCES[741] = R.string.condition_741;
+        STRING_RESOURCES[751] = R.string.condition_751;
+        STRING_RESOURCES[761] = R.string.condition_761;
+        STRING_RESOURCES[762] = R.string.condition_762;
+        STRING_RESOURCES[771] = R.string.condition_771;
+        STRING_RESOURCES[781] = R.string.condition_781;
+        STRING_RESOURCES[800] = R.string.condition_800;
+        STRING_RESOURCES[801] = R.string.condition_801;
+        STRING_RESOURCES[802] = R.string.condition_802;
+        STRING_RESOURCES[803] = R.string.condition_803;
+        STRING_RESOURCES[804] = R.string.condition_804;
+        STRING_RESOURCES[900] = R.string.condition_900;
+        STRING_RESOURCES[901] = R.string.condition_901;
+        STRING_RESOURCES[902] = R.string.condition_902;
+        STRING_RESOURCES[903] = R.string.condition_903;
+        STRING_RESOURCES[904] = R.string.condition_904;
+        STRING_RESOURCES[905] = R.string.condition_905;
+        STRING_RESOURCES[906] = R.string.condition_906;
+        STRING_RESOURCES[951] = R.string.condition_951;
+        STRING_RESOURCES[952] = R.string.condition_952;
+        STRING_RESOURCES[953] = R.string.condition_953;
+        STRING_RESOURCES[954] = R.string.condition_954;
+        STRING_RESOURCES[955] = R.string.condition_955;
+        STRING_RESOURCES[956] = R.string.condition_956;
+        STRING_RESOURCES[957] = R.string.condition_957;
+        STRING_RESOURCES[958] = R.string.condition_958;
+        STRING_RESOURCES[959] = R.string.condition_959;
+        STRING_RESOURCES[960] = R.string.condition_960;
+        STRING_RESOURCES[961] = R.string.condition_961;
+        STRING_RESOURCES[962] = R.string.condition_962;
+    }
+
+    // The art urls of the art pack used last, made once for each kind.
+    private static volatile ArtUrls sArtUrls;
+
+    private WeatherConditions() {
+    }
+
+    private static void setKind(int first, int last, int kind) {
+        for (int id = first; id <= last; id++) {
+            KINDS[id] = (byte) kind;
+        }
+    }
+
+    private static int kindOf(int weatherId) {
+        return weatherId >= 0 && weatherId < ID_COUNT ? KINDS[weatherId] : NONE;
+    }
+
+    /**
+     * @return the name of the condition's icon, or an empty string if it has none
+     */
+    public static String getIconName(int weatherId) {
+        return ICON_NAMES[kindOf(weatherId)];
+    }
+
+    /**
+     * @return the condition's icon resource, or -1 if it has none
+     */
+    public static int getIconResource(int weatherId) {
+        return ICON_RESOURCES[kindOf(weatherId)];
+    }
+
+    /**
+     * @return the condition's art resource, or -1 if it has none
+     */
+    public static int getArtResource(int weatherId) {
+        return ART_RESOURCES[kindOf(weatherId)];
+    }
+
+    /**
+     * @return the condition's string resource, or 0 if it has none and should be described by
+     * {@code R.string.condition_unknown}
+     */
+    public static int getStringResource(int weatherId) {
+        return weatherId >= 0 && weatherId < ID_COUNT ? STRING_RESOURCES[weatherId] : 0;
+    }
+
+    /**
+     * @return the url of a photo of the condition, for Muzei, or null if it has none
+     */
+    public static String getImageUrl(int weatherId) {
+        return weatherId == 781 ? SQUALLS_IMAGE_URL : IMAGE_URLS[kindOf(weatherId)];
+    }
+
+    /**
+     * Returns the url of the condition's art in an art pack.  The same instance is returned
+     * every time for a given pack and kind of weather.
+     *
+     * @param artPack the format of the pack's urls, taking the art's name
+     * @return the url, or null if the condition has no art
+     */
+    public static String getArtUrl(String artPack, int weatherId) {
+        int kind = kindOf(weatherId);
+        if (kind == NONE) {
+            return null;
+        }
+        ArtUrls artUrls = sArtUrls;
+        if (artUrls == null || !artUrls.artPack.equals(artPack)) {
+            artUrls = new ArtUrls(artPack);
+            sArtUrls = artUrls;
+        }
+        return artUrls.urls[kind];
+    }
+
+    private static final class ArtUrls {
+        final String artPack;
+        final String[] urls = new String[ICON_NAMES.length];
+
+        ArtUrls(String artPack) {
+            this.artPack = artPack;
+            for (int kind = NONE + 1; kind < urls.length; kind++) {
+                urls[kind] = String.format(Locale.US, artPack, ICON_NAMES[kind]).intern();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Delivers change notifications for the provider's Uris, merged.
+ * <p>
+ * Every notification for the same Uri within {@link #DEBOUNCE_MILLIS} is delivered once, and a
+ * Uri is dropped when one of its ancestors is pending too, since a notification reaches the
+ * observers of every Uri below it.  Writes that belong together, such as a sync's inserts and
+ * the purge that follows them, go between {@link #beginBatch()} and {@link #endBatch()}; nothing
+ * is delivered until the outermost batch ends, so each observer reloads once for all of it.
+ */
+public final class ChangeNotifier {
+
+    static final long DEBOUNCE_MILLIS = 100;
+
+    private static ChangeNotifier sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final Handler mHandler;
+    private final Runnable mDeliver = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    // Guarded by this.
+    private final List<Uri> mPending = new ArrayList<Uri>();
+    private int mBatchDepth;
+    private boolean mScheduled;
+    private int mDeliveredCount;
+
+    private ChangeNotifier(Context context) {
+        mContentResolver = context.getContentResolver();
+        HandlerThread thread = new HandlerThread(ChangeNotifier.class.getSimpleName(),
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized ChangeNotifier getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ChangeNotifier(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues a change notification for {@code uri}.
+     */
+    public synchronized void notifyChange(Uri uri) {
+        for (Iterator<Uri> it = mPending.iterator(); it.hasNext(); ) {
+            Uri pending = it.next();
+            if (isSameOrAncestor(pending, uri)) {
+                return;
+            }
+            if (isSameOrAncestor(uri, pending)) {
+                it.remove();
+            }
+        }
+        mPending.add(uri);
+        schedule();
+    }
+
+    /**
+     * Holds back notifications until the matching {@link #endBatch()}.  Batches nest.
+     */
+    public synchronized void beginBatch() {
+        mBatchDepth++;
+    }
+
+    public synchronized void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("endBatch() without beginBatch()");
+        }
+        mBatchDepth--;
+        schedule();
+    }
+
+    /**
+     * Returns the number of notifications delivered so far.
+     */
+    public synchronized int getDeliveredCount() {
+        return mDeliveredCount;
+    }
+
+    private void schedule() {
+        if (mBatchDepth == 0 && !mScheduled && !mPending.isEmpty()) {
+            mScheduled = true;
+            mHandler.postDelayed(mDeliver, DEBOUNCE_MILLIS);
+        }
+    }
+
+    private void deliver() {
+        Uri[] uris;
+        synchronized (this) {
+            mScheduled = false;
+            if (mBatchDepth > 0) {
+                // A batch began while this was waiting; its end delivers these as well.
+                return;
+            }
+            uris = mPending.toArray(new Uri[mPending.size()]);
+            mPending.clear();
+            mDeliveredCount += uris.length;
+        }
+        for (Uri uri : uris) {
+            mContentResolver.notifyChange(uri, null);
+        }
+    }
+
+    private static boolean isSameOrAncestor(Uri ancestor, Uri uri) {
+        if (!ancestor.getAuthority().equals(uri.getAuthority())) {
+            return false;
+        }
+        List<String> ancestorSegments = ancestor.getPathSegments();
+        List<String> segments = uri.getPathSegments();
+        return ancestorSegments.size() <= segments.size()
+                && ancestorSegments.equals(segments.subList(0, ancestorSegments.size()));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The stored forecast of each location, kept in memory for the whole process.
+ * <p>
+ * The list, the detail view, the widgets, Muzei and the notification all want the same
+ * forecast after every sync.  The first of them to ask reads it from the provider, and the
+ * others get the same {@link ForecastData} without touching the database.  {@link WeatherProvider}
+ * drops every entry whenever weather or locations are written, and the sync loads the locations
+ * it stored right after committing them, before it tells anyone there is new data.
+ */
+public final class ForecastCache {
+
+    private static ForecastCache sInstance;
+
+    private final ContentResolver mContentResolver;
+    private final ConcurrentHashMap<String, ForecastData> mForecasts =
+            new ConcurrentHashMap<String, ForecastData>();
+    // Bumped by every invalidation, so that a load that raced with a write doesn't cache what it
+    // read before it.  Guarded by mForecasts.
+    private int mGeneration;
+
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    private ForecastCache(Context context) {
+        mContentResolver = context.getContentResolver();
+    }
+
+    public static synchronized ForecastCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns every stored day of the location's forecast, reading it from the provider if it
+     * isn't in memory.  Don't call it on the main thread.
+     *
+     * @return the forecast, which is {@link ForecastData#EMPTY} if nothing is stored
+     */
+    public ForecastData get(String locationSetting) {
+        ForecastData forecast = mForecasts.get(locationSetting);
+        if (forecast != null) {
+            mHitCount.incrementAndGet();
+            return forecast;
+        }
+        mMissCount.incrementAndGet();
+        return load(locationSetting);
+    }
+
+    /**
+     * Reads the location's forecast from the provider and keeps it, whether or not it was in
+     * memory already.
+     */
+    public ForecastData load(String locationSetting) {
+        int generation;
+        synchronized (mForecasts) {
+            generation = mGeneration;
+        }
+        ForecastData forecast = ForecastData.query(mContentResolver,
+                WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting));
+        synchronized (mForecasts) {
+            if (generation == mGeneration) {
+                mForecasts.put(locationSetting, forecast);
+            }
+        }
+        return forecast;
+    }
+
+    /**
+     * Drops every forecast held, because stored weather or locations changed.
+     */
+    public void invalidate() {
+        synchronized (mForecasts) {
+            mGeneration++;
+            mForecasts.clear();
+        }
+    }
+
+    /**
+     * Returns the number of {@link #get} calls answered from memory.
+     */
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * A location's forecast read out of the provider, held column by column in primitive arrays.
+ * Day {@code i} is found at index {@code i} of each array, in date order, and the cursor it was
+ * read from is already closed.
+ * <p>
+ * Read it with {@link #query}, or with {@link #fromCursor} from a cursor queried with
+ * {@link #PROJECTION}.  Instances are shared between threads through {@link ForecastCache}, so
+ * the arrays must never be written to once read.
+ */
+public final class ForecastData {
+
+    public static final String[] PROJECTION = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            // The provider joins the location into every weather Uri but the bare one.
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+    // these indices must match the projection
+    static final int INDEX_ID = 0;
+    static final int INDEX_LOCATION_ID = 1;
+    static final int INDEX_DATE = 2;
+    static final int INDEX_WEATHER_ID = 3;
+    static final int INDEX_SHORT_DESC = 4;
+    static final int INDEX_MAX_TEMP = 5;
+    static final int INDEX_MIN_TEMP = 6;
+    static final int INDEX_HUMIDITY = 7;
+    static final int INDEX_PRESSURE = 8;
+    static final int INDEX_WIND_SPEED = 9;
+    static final int INDEX_DEGREES = 10;
+    static final int INDEX_COORD_LAT = 11;
+    static final int INDEX_COORD_LONG = 12;
+
+    public static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    public static final ForecastData EMPTY = new ForecastData(0, 0, 0);
+
+    public final int count;
+    // Of the location; zero when the forecast is empty.
+    public final double latitude;
+    public final double longitude;
+    public final long[] ids;
+    public final long[] locationIds;
+    public final long[] dates;
+    public final int[] weatherIds;
+    public final String[] descriptions;
+    public final float[] maxTemps;
+    public final float[] minTemps;
+    public final float[] humidity;
+    public final float[] pressure;
+    public final float[] windSpeeds;
+    public final float[] degrees;
+
+    private ForecastData(int count, double latitude, double longitude) {
+        this.count = count;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        ids = new long[count];
+        locationIds = new long[count];
+        dates = new long[count];
+        weatherIds = new int[count];
+        descriptions = new String[count];
+        maxTemps = new float[count];
+        minTemps = new float[count];
+        humidity = new float[count];
+        pressure = new float[count];
+        windSpeeds = new float[count];
+        degrees = new float[count];
+    }
+
+    /**
+     * Reads the forecast at {@code uri}, one of the location's weather Uris in
+     * {@link WeatherContract}.
+     *
+     * @return the forecast in date order, or {@link #EMPTY} if the provider returned nothing
+     */
+    public static ForecastData query(ContentResolver resolver, Uri uri) {
+        Cursor cursor = resolver.query(uri, PROJECTION, null, null, SORT_ORDER);
+        if (cursor == null) {
+            return EMPTY;
+        }
+        try {
+            return fromCursor(cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads every row of a cursor queried with {@link #PROJECTION}.  The cursor is left open.
+     */
+    public static ForecastData fromCursor(Cursor cursor) {
+        int count = cursor.getCount();
+        if (count <= 0) {
+            return EMPTY;
+        }
+        cursor.moveToFirst();
+        ForecastData data = new ForecastData(count, cursor.getDouble(INDEX_COORD_LAT),
+                cursor.getDouble(INDEX_COORD_LONG));
+        cursor.moveToPosition(-1);
+        for (int i = 0; i < count && cursor.moveToNext(); i++) {
+            data.ids[i] = cursor.getLong(INDEX_ID);
+            data.locationIds[i] = cursor.getLong(INDEX_LOCATION_ID);
+            data.dates[i] = cursor.getLong(INDEX_DATE);
+            data.weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+            data.descriptions[i] = cursor.getString(INDEX_SHORT_DESC);
+            data.maxTemps[i] = cursor.getFloat(INDEX_MAX_TEMP);
+            data.minTemps[i] = cursor.getFloat(INDEX_MIN_TEMP);
+            data.humidity[i] = cursor.getFloat(INDEX_HUMIDITY);
+            data.pressure[i] = cursor.getFloat(INDEX_PRESSURE);
+            data.windSpeeds[i] = cursor.getFloat(INDEX_WIND_SPEED);
+            data.degrees[i] = cursor.getFloat(INDEX_DEGREES);
+        }
+        return data;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the index of the given day, or -1 if the forecast doesn't have it.
+     */
+    public int indexOfDate(long date) {
+        int index = indexFrom(date);
+        return index < count && dates[index] == WeatherContract.normalizeDate(date) ? index : -1;
+    }
+
+    /**
+     * Returns the forecast from the given day on, as a weather Uri with a start date would.
+     */
+    public ForecastData since(long date) {
+        int start = indexFrom(date);
+        if (start == 0) {
+            return this;
+        }
+        if (start == count) {
+            return EMPTY;
+        }
+        ForecastData data = new ForecastData(count - start, latitude, longitude);
+        int length = data.count;
+        System.arraycopy(ids, start, data.ids, 0, length);
+        System.arraycopy(locationIds, start, data.locationIds, 0, length);
+        System.arraycopy(dates, start, data.dates, 0, length);
+        System.arraycopy(weatherIds, start, data.weatherIds, 0, length);
+        System.arraycopy(descriptions, start, data.descriptions, 0, length);
+        System.arraycopy(maxTemps, start, data.maxTemps, 0, length);
+        System.arraycopy(minTemps, start, data.minTemps, 0, length);
+        System.arraycopy(humidity, start, data.humidity, 0, length);
+        System.arraycopy(pressure, start, data.pressure, 0, length);
+        System.arraycopy(windSpeeds, start, data.windSpeeds, 0, length);
+        System.arraycopy(degrees, start, data.degrees, 0, length);
+        return data;
+    }
+
+    // The first index whose day is on or after the given one's.
+    private int indexFrom(long date) {
+        long day = WeatherContract.normalizeDate(date);
+        int index = 0;
+        while (index < count && dates[index] < day) {
+            index++;
+        }
+        return index;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * Weather rows to be written in one go, held column by column in primitive arrays.  Row
+ * {@code i} is found at index {@code i} of each array, and only the first {@link #count} entries
+ * are valid.
+ * <p>
+ * Once written, {@link #ids} and {@link #changed} tell, for each row, which row it ended up in
+ * and whether anything was written.
+ */
+public final class WeatherBatch {
+
+    public int count;
+    public long[] locationId;
+    public long[] date;
+    public int[] weatherId;
+    public String[] shortDesc;
+    public double[] minTemp;
+    public double[] maxTemp;
+    public double[] humidity;
+    public double[] pressure;
+    public double[] windSpeed;
+    public double[] degrees;
+
+    // Filled in when the batch is written.
+    public long[] ids;
+    public boolean[] changed;
+
+    public WeatherBatch(int capacity) {
+        capacity = Math.max(capacity, 1);
+        locationId = new long[capacity];
+        date = new long[capacity];
+        weatherId = new int[capacity];
+        shortDesc = new String[capacity];
+        minTemp = new double[capacity];
+        maxTemp = new double[capacity];
+        humidity = new double[capacity];
+        pressure = new double[capacity];
+        windSpeed = new double[capacity];
+        degrees = new double[capacity];
+    }
+
+    public void add(long locationId, long date, int weatherId, String shortDesc, double minTemp,
+                    double maxTemp, double humidity, double pressure, double windSpeed,
+                    double degrees) {
+        ensureCapacity(count + 1);
+        int i = count++;
+        this.locationId[i] = locationId;
+        this.date[i] = date;
+        this.weatherId[i] = weatherId;
+        this.shortDesc[i] = shortDesc;
+        this.minTemp[i] = minTemp;
+        this.maxTemp[i] = maxTemp;
+        this.humidity[i] = humidity;
+        this.pressure[i] = pressure;
+        this.windSpeed[i] = windSpeed;
+        this.degrees[i] = degrees;
+    }
+
+    /**
+     * Returns the number of rows that were inserted or updated when the batch was written.
+     */
+    public int getChangedCount() {
+        int changedCount = 0;
+        for (int i = 0; changed != null && i < count; i++) {
+            if (changed[i]) {
+                changedCount++;
+            }
+        }
+        return changedCount;
+    }
+
+    /**
+     * Unpacks weather rows handed to the provider as ContentValues.
+     *
+     * @throws IllegalArgumentException if a row lacks one of the weather columns
+     */
+    public static WeatherBatch fromContentValues(ContentValues[] values) {
+        WeatherBatch batch = new WeatherBatch(values.length);
+        for (ContentValues value : values) {
+            batch.add(getLong(value, WeatherEntry.COLUMN_LOC_KEY),
+                    getLong(value, WeatherEntry.COLUMN_DATE),
+                    (int) getLong(value, WeatherEntry.COLUMN_WEATHER_ID),
+                    getString(value, WeatherEntry.COLUMN_SHORT_DESC),
+                    getDouble(value, WeatherEntry.COLUMN_MIN_TEMP),
+                    getDouble(value, WeatherEntry.COLUMN_MAX_TEMP),
+                    getDouble(value, WeatherEntry.COLUMN_HUMIDITY),
+                    getDouble(value, WeatherEntry.COLUMN_PRESSURE),
+                    getDouble(value, WeatherEntry.COLUMN_WIND_SPEED),
+                    getDouble(value, WeatherEntry.COLUMN_DEGREES));
+        }
+        return batch;
+    }
+
+    /**
+     * Packs the rows into ContentValues, for callers that can only reach the provider through a
+     * ContentResolver.
+     */
+    public ContentValues[] toContentValues() {
+        ContentValues[] values = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues value = new ContentValues();
+            value.put(WeatherEntry.COLUMN_LOC_KEY, locationId[i]);
+            value.put(WeatherEntry.COLUMN_DATE, date[i]);
+            value.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId[i]);
+            value.put(WeatherEntry.COLUMN_SHORT_DESC, shortDesc[i]);
+            value.put(WeatherEntry.COLUMN_MIN_TEMP, minTemp[i]);
+            value.put(WeatherEntry.COLUMN_MAX_TEMP, maxTemp[i]);
+            value.put(WeatherEntry.COLUMN_HUMIDITY, humidity[i]);
+            value.put(WeatherEntry.COLUMN_PRESSURE, pressure[i]);
+            value.put(WeatherEntry.COLUMN_WIND_SPEED, windSpeed[i]);
+            value.put(WeatherEntry.COLUMN_DEGREES, degrees[i]);
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size <= date.length) {
+            return;
+        }
+        int newLength = Math.max(size, date.length * 2);
+        locationId = Arrays.copyOf(locationId, newLength);
+        date = Arrays.copyOf(date, newLength);
+        weatherId = Arrays.copyOf(weatherId, newLength);
+        shortDesc = Arrays.copyOf(shortDesc, newLength);
+        minTemp = Arrays.copyOf(minTemp, newLength);
+        maxTemp = Arrays.copyOf(maxTemp, newLength);
+        humidity = Arrays.copyOf(humidity, newLength);
+        pressure = Arrays.copyOf(pressure, newLength);
+        windSpeed = Arrays.copyOf(windSpeed, newLength);
+        degrees = Arrays.copyOf(degrees, newLength);
+    }
+
+    private static long getLong(ContentValues value, String column) {
+        Long result = value.getAsLong(column);
+        if (result == null) {
+            throw new IllegalArgumentException("Weather row is missing " + column);
+        }
+        return result;
+    }
+
+    private static double getDouble(ContentValues value, String column) {
+        Double result = value.getAsDouble(column);
+        if (result == null) {
+            throw new IllegalArgumentException("Weather row is missing " + column);
+        }
+        return result;
+    }
+
+    private static String getString(ContentValues value, String column) {
+        String result = value.getAsString(column);
+        if (result == null) {
+            throw new IllegalArgumentException("Weather row is missing " + column);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Writes {@link WeatherBatch}es into the weather table.
+ * <p>
+ * Rows already stored with the same values are skipped, stored rows that differ are updated in
+ * place so their _ID stays the same, and the rest are inserted.  The insert and update are
+ * compiled once per writer and values are bound straight from the batch's arrays, so a row
+ * costs neither SQL parsing nor boxing.
+ */
+class WeatherBulkWriter {
+
+    private static final String LOG_TAG = WeatherBulkWriter.class.getSimpleName();
+
+    private static final String SQL_INSERT = "INSERT INTO " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_UPDATE = "UPDATE " + WeatherEntry.TABLE_NAME + " SET " +
+            WeatherEntry.COLUMN_WEATHER_ID + " = ?, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " = ?, " +
+            WeatherEntry.COLUMN_MIN_TEMP + " = ?, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " = ?, " +
+            WeatherEntry.COLUMN_HUMIDITY + " = ?, " +
+            WeatherEntry.COLUMN_PRESSURE + " = ?, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " = ?, " +
+            WeatherEntry.COLUMN_DEGREES + " = ? " +
+            "WHERE " + WeatherEntry._ID + " = ?";
+
+    private static final String[] STORED_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // These indices are tied to STORED_COLUMNS.
+    private static final int COL_ID = 0;
+    private static final int COL_DATE = 1;
+    private static final int COL_WEATHER_ID = 2;
+    private static final int COL_SHORT_DESC = 3;
+    private static final int COL_MIN_TEMP = 4;
+    private static final int COL_MAX_TEMP = 5;
+    private static final int COL_HUMIDITY = 6;
+    private static final int COL_PRESSURE = 7;
+    private static final int COL_WIND_SPEED = 8;
+    private static final int COL_DEGREES = 9;
+
+    //location_id = ? AND date >= ? AND date <= ?
+    private static final String sLocationIdAndDateRangeSelection =
+            WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mInsert;
+    private final SQLiteStatement mUpdate;
+
+    // Rows already in the table, plus the ones written so far, so that a later row for the same
+    // day in the batch is compared against what the earlier one left behind.
+    private WeatherBatch mStored;
+    private long[] mStoredIds;
+
+    WeatherBulkWriter(SQLiteDatabase db) {
+        mDb = db;
+        mInsert = db.compileStatement(SQL_INSERT);
+        mUpdate = db.compileStatement(SQL_UPDATE);
+    }
+
+    /**
+     * Writes a batch.  Must be called inside a transaction.  Dates are normalized in place, and
+     * {@link WeatherBatch#ids} and {@link WeatherBatch#changed} are filled in.
+     *
+     * @return the number of rows inserted or updated
+     */
+    int write(WeatherBatch batch) {
+        int count = batch.count;
+        batch.ids = new long[count];
+        batch.changed = new boolean[count];
+
+        // Find the date range each location is written over, to read what's stored for it in
+        // a single query.
+        TimeZone timeZone = TimeZone.getDefault();
+        Map<Long, long[]> dateRanges = new HashMap<Long, long[]>();
+        for (int i = 0; i < count; i++) {
+            long date = WeatherContract.normalizeDate(batch.date[i], timeZone);
+            batch.date[i] = date;
+            long[] range = dateRanges.get(batch.locationId[i]);
+            if (range == null) {
+                dateRanges.put(batch.locationId[i], new long[]{date, date});
+            } else {
+                range[0] = Math.min(range[0], date);
+                range[1] = Math.max(range[1], date);
+            }
+        }
+
+        mStored = new WeatherBatch(count);
+        mStoredIds = new long[mStored.date.length];
+        Map<Long, Map<Long, Integer>> storedByLocation = new HashMap<Long, Map<Long, Integer>>();
+        for (Map.Entry<Long, long[]> entry : dateRanges.entrySet()) {
+            storedByLocation.put(entry.getKey(), queryStored(entry.getKey(),
+                    entry.getValue()[0], entry.getValue()[1]));
+        }
+
+        int writeCount = 0;
+        for (int i = 0; i < count; i++) {
+            Map<Long, Integer> storedByDate = storedByLocation.get(batch.locationId[i]);
+            Integer stored = storedByDate.get(batch.date[i]);
+            if (stored == null) {
+                long id = insert(batch, i);
+                batch.ids[i] = id;
+                batch.changed[i] = id != -1;
+                if (id != -1) {
+                    storedByDate.put(batch.date[i], addStored(batch, i, id));
+                }
+            } else if (isStored(batch, i, stored)) {
+                batch.ids[i] = mStoredIds[stored];
+            } else {
+                batch.ids[i] = mStoredIds[stored];
+                batch.changed[i] = true;
+                update(batch, i, mStoredIds[stored]);
+                copyRow(batch, i, mStored, stored);
+            }
+            if (batch.changed[i]) {
+                writeCount++;
+            }
+        }
+        mStored = null;
+        mStoredIds = null;
+        return writeCount;
+    }
+
+    void close() {
+        mInsert.close();
+        mUpdate.close();
+    }
+
+    /**
+     * Reads the stored rows of a location between two dates, inclusive, into {@link #mStored}.
+     *
+     * @return the index in {@link #mStored} of each row, keyed by date
+     */
+    private Map<Long, Integer> queryStored(long locationId, long startDate, long endDate) {
+        Map<Long, Integer> storedByDate = new HashMap<Long, Integer>();
+        Cursor cursor = mDb.query(WeatherEntry.TABLE_NAME,
+                STORED_COLUMNS,
+                sLocationIdAndDateRangeSelection,
+                new String[]{Long.toString(locationId), Long.toString(startDate),
+                        Long.toString(endDate)},
+                null,
+                null,
+                null);
+        try {
+            while (cursor.moveToNext()) {
+                mStored.add(locationId,
+                        cursor.getLong(COL_DATE),
+                        cursor.getInt(COL_WEATHER_ID),
+                        cursor.getString(COL_SHORT_DESC),
+                        cursor.getDouble(COL_MIN_TEMP),
+                        cursor.getDouble(COL_MAX_TEMP),
+                        cursor.getDouble(COL_HUMIDITY),
+                        cursor.getDouble(COL_PRESSURE),
+                        cursor.getDouble(COL_WIND_SPEED),
+                        cursor.getDouble(COL_DEGREES));
+                int index = mStored.count - 1;
+                setStoredId(index, cursor.getLong(COL_ID));
+                storedByDate.put(mStored.date[index], index);
+            }
+        } finally {
+            cursor.close();
+        }
+        return storedByDate;
+    }
+
+    private int addStored(WeatherBatch batch, int i, long id) {
+        mStored.add(batch.locationId[i], batch.date[i], batch.weatherId[i], batch.shortDesc[i],
+                batch.minTemp[i], batch.maxTemp[i], batch.humidity[i], batch.pressure[i],
+                batch.windSpeed[i], batch.degrees[i]);
+        int index = mStored.count - 1;
+        setStoredId(index, id);
+        return index;
+    }
+
+    private void setStoredId(int index, long id) {
+        if (index >= mStoredIds.length) {
+            mStoredIds = Arrays.copyOf(mStoredIds, mStored.date.length);
+        }
+        mStoredIds[index] = id;
+    }
+
+    private boolean isStored(WeatherBatch batch, int i, int stored) {
+        WeatherBatch s = mStored;
+        return batch.weatherId[i] == s.weatherId[stored] &&
+                (batch.shortDesc[i] == null ? s.shortDesc[stored] == null
+                        : batch.shortDesc[i].equals(s.shortDesc[stored])) &&
+                Double.compare(batch.minTemp[i], s.minTemp[stored]) == 0 &&
+                Double.compare(batch.maxTemp[i], s.maxTemp[stored]) == 0 &&
+                Double.compare(batch.humidity[i], s.humidity[stored]) == 0 &&
+                Double.compare(batch.pressure[i], s.pressure[stored]) == 0 &&
+                Double.compare(batch.windSpeed[i], s.windSpeed[stored]) == 0 &&
+                Double.compare(batch.degrees[i], s.degrees[stored]) == 0;
+    }
+
+    private long insert(WeatherBatch batch, int i) {
+        SQLiteStatement statement = mInsert;
+        statement.bindLong(1, batch.locationId[i]);
+        statement.bindLong(2, batch.date[i]);
+        statement.bindLong(3, batch.weatherId[i]);
+        bindString(statement, 4, batch.shortDesc[i]);
+        statement.bindDouble(5, batch.minTemp[i]);
+        statement.bindDouble(6, batch.maxTemp[i]);
+        statement.bindDouble(7, batch.humidity[i]);
+        statement.bindDouble(8, batch.pressure[i]);
+        statement.bindDouble(9, batch.windSpeed[i]);
+        statement.bindDouble(10, batch.degrees[i]);
+        try {
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            // Same as SQLiteDatabase.insert: report the row as not written and carry on.
+            Log.e(LOG_TAG, "Error inserting weather row " + i, e);
+            return -1;
+        }
+    }
+
+    private void update(WeatherBatch batch, int i, long id) {
+        SQLiteStatement statement = mUpdate;
+        statement.bindLong(1, batch.weatherId[i]);
+        bindString(statement, 2, batch.shortDesc[i]);
+        statement.bindDouble(3, batch.minTemp[i]);
+        statement.bindDouble(4, batch.maxTemp[i]);
+        statement.bindDouble(5, batch.humidity[i]);
+        statement.bindDouble(6, batch.pressure[i]);
+        statement.bindDouble(7, batch.windSpeed[i]);
+        statement.bindDouble(8, batch.degrees[i]);
+        statement.bindLong(9, id);
+        statement.executeUpdateDelete();
+    }
+
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static void copyRow(WeatherBatch from, int i, WeatherBatch to, int j) {
+        to.weatherId[j] = from.weatherId[i];
+        to.shortDesc[j] = from.shortDesc[i];
+        to.minTemp[j] = from.minTemp[i];
+        to.maxTemp[j] = from.maxTemp[i];
+        to.humidity[j] = from.humidity[i];
+        to.pressure[j] = from.pressure[i];
+        to.windSpeed[j] = from.windSpeed[i];
+        to.degrees[j] = from.degrees[i];
+    }
+}
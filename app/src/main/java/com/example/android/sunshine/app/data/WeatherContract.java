@@ -19,7 +19,9 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
+import android.text.format.DateUtils;
+
+import java.util.TimeZone;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +45,30 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    // Weather keyed by location._id rather than by location setting.
+    public static final String PATH_FORECAST = "forecast";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the day in the default time zone.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return normalizeDate(startDate, TimeZone.getDefault());
+    }
+
+    /**
+     * Returns the start of the day {@code startDate} falls on, in the given time zone.  Done with
+     * plain arithmetic, since it runs for every row written; callers normalizing many dates
+     * should look the time zone up once.
+     */
+    public static long normalizeDate(long startDate, TimeZone timeZone) {
+        long offset = timeZone.getOffset(startDate);
+        long localTime = startDate + offset;
+        long localDay = localTime / DateUtils.DAY_IN_MILLIS;
+        if (localTime % DateUtils.DAY_IN_MILLIS < 0) {
+            localDay--;
+        }
+        long localMidnight = localDay * DateUtils.DAY_IN_MILLIS;
+        // Across a daylight saving change, midnight has a different offset than startDate.
+        return localMidnight - timeZone.getOffset(localMidnight - offset);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -126,10 +143,51 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameter on the row Uri returned by insert() when the row was already stored
+        // with the same values.  Nothing was written, and no change was notified.
+        public static final String PARAM_UNCHANGED = "unchanged";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        /*
+            Weather for a location given by its _id, e.g. from the location_id column of a row
+            already read.  These return the same rows as the location setting Uris below, without
+            the provider having to find the location by name.
+         */
+        public static Uri buildWeatherLocationId(long locationId) {
+            return ContentUris.withAppendedId(
+                    BASE_CONTENT_URI.buildUpon().appendPath(PATH_FORECAST).build(), locationId);
+        }
+
+        public static Uri buildWeatherLocationIdWithStartDate(long locationId, long startDate) {
+            return buildWeatherLocationId(locationId).buildUpon()
+                    .appendQueryParameter(COLUMN_DATE, Long.toString(normalizeDate(startDate)))
+                    .build();
+        }
+
+        public static Uri buildWeatherLocationIdWithDate(long locationId, long date) {
+            return buildWeatherLocationId(locationId).buildUpon()
+                    .appendPath(Long.toString(normalizeDate(date))).build();
+        }
+
+        public static long getLocationIdFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(1));
+        }
+
+        public static Uri buildUnchangedWeatherUri(long id) {
+            return buildWeatherUri(id).buildUpon()
+                    .appendQueryParameter(PARAM_UNCHANGED, "1").build();
+        }
+
+        /**
+         * Returns whether a Uri returned by insert() names a row that was left untouched.
+         */
+        public static boolean isUnchangedUri(Uri uri) {
+            return "1".equals(uri.getQueryParameter(PARAM_UNCHANGED));
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
@@ -16,6 +16,7 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
@@ -28,12 +29,53 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 3;
 
     static final String DATABASE_NAME = "weather.db";
 
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+
+    // Every forecast read looks up a location's rows by date, in date order.  Keying the index on
+    // (location_id, date) serves that lookup and the ordering.  The UNIQUE (date, location_id)
+    // index still serves date-only purges.
+    static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" +
+                    WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ");";
+
+    // Page cache of the connection that writes, in KiB.  Large enough for a sync's worth of
+    // weather rows and their indexes.
+    private static final int CACHE_SIZE_KIB = 2048;
+    // How much of the file reads may map rather than copy.  Some builds of SQLite ignore this.
+    private static final long MMAP_SIZE_BYTES = 4 * 1024 * 1024;
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With a write-ahead log, readers keep seeing the last committed forecast while a sync
+        // writes the next one, instead of waiting for its transaction to finish.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // These apply to the primary connection, which every write goes through.  With WAL,
+        // NORMAL only syncs at checkpoints: a power cut may lose the last sync, which the next
+        // one refetches, but can't corrupt the database.
+        setPragma(db, "synchronous = NORMAL");
+        setPragma(db, "cache_size = -" + CACHE_SIZE_KIB);
+        setPragma(db, "temp_store = MEMORY");
+        setPragma(db, "mmap_size = " + MMAP_SIZE_BYTES);
+    }
+
+    // Some pragmas answer with a row, which execSQL refuses, so they all go through rawQuery.
+    private static void setPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     @Override
@@ -81,18 +123,41 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < 2) {
+            // Version 1 predates the current tables.  This database is only a cache for online
+            // data, so for those the upgrade policy is to simply discard the data and start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // From version 2 on the cached forecast is kept: each version brings its own step, and an
+        // old database takes every step in turn.  The framework runs all of them in a single
+        // transaction, so a failed step leaves the database at its old version.
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrateTo(sqLiteDatabase, version);
+        }
+    }
+
+    /**
+     * Takes the schema from {@code version - 1} to {@code version} without losing rows.  When you
+     * increment the database version, add its step here rather than dropping tables.
+     */
+    private static void migrateTo(SQLiteDatabase sqLiteDatabase, int version) {
+        switch (version) {
+            case 3:
+                // Only adds an index.
+                sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                break;
+            default:
+                throw new IllegalStateException("No migration to database version " + version);
+        }
     }
 }
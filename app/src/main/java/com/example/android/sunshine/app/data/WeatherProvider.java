@@ -17,25 +17,53 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    // Writes notify through it, so that a batch of them reloads each observer only once.
+    private ChangeNotifier mChangeNotifier;
+    private ForecastCache mForecastCache;
+    // Set while the calling thread applies a batch, so that its weather inserts share one writer.
+    private final ThreadLocal<WeatherBulkWriter> mBatchWriter =
+            new ThreadLocal<WeatherBulkWriter>();
+    // Set once the batch the calling thread applies has written the location table.
+    private final ThreadLocal<Boolean> mBatchWroteLocations = new ThreadLocal<Boolean>();
+
+    // location_setting -> location._id, so that weather queries by location setting are keyed on
+    // the integer column and the location is only looked up by name once.  Cleared once a write
+    // to the location table is committed; mLocationIdsGeneration keeps a lookup that raced with
+    // such a write from caching what it read before it.
+    private final ConcurrentHashMap<String, Long> mLocationIds =
+            new ConcurrentHashMap<String, Long>();
+    private int mLocationIdsGeneration;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_WITH_LOCATION_ID = 103;
+    static final int WEATHER_WITH_LOCATION_ID_AND_DATE = 104;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    // Package-private, like the selections below, so tests can check the query plans.
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,26 +80,138 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //weather.location_id = ?
+    static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //weather.location_id = ? AND date >= ?
+    static final String sLocationIdWithStartDateSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    //weather.location_id = ? AND date = ?
+    static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    private Cursor getWeatherByLocationId(long locationId, long startDate, String[] projection,
+                                          String sortOrder) {
+        String[] selectionArgs;
+        String selection;
+
+        if (startDate == 0) {
+            selection = sLocationIdSelection;
+            selectionArgs = new String[]{Long.toString(locationId)};
+        } else {
+            selection = sLocationIdWithStartDateSelection;
+            selectionArgs = new String[]{Long.toString(locationId), Long.toString(startDate)};
+        }
+
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    private Cursor getWeatherByLocationIdAndDate(long locationId, long date, String[] projection,
+                                                 String sortOrder) {
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sLocationIdAndDaySelection,
+                new String[]{Long.toString(locationId), Long.toString(date)},
+                null,
+                null,
+                sortOrder
+        );
+    }
+
+    /**
+     * Returns the _id of the location with the given setting, or -1 if there is no such location.
+     */
+    long getLocationId(String locationSetting) {
+        Long locationId = mLocationIds.get(locationSetting);
+        if (locationId != null) {
+            return locationId;
+        }
+
+        int generation;
+        synchronized (mLocationIds) {
+            generation = mLocationIdsGeneration;
+        }
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            if (!cursor.moveToFirst()) {
+                // Unknown settings aren't cached; the sync may be about to add the location.
+                return -1;
+            }
+            locationId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+        synchronized (mLocationIds) {
+            if (generation == mLocationIdsGeneration) {
+                mLocationIds.put(locationSetting, locationId);
+            }
+        }
+        return locationId;
+    }
+
+    // Called after writing the location table.  A batch's writes are only committed when it
+    // ends, so it drops the ids then.
+    private void locationsWritten() {
+        if (mBatchWriter.get() != null) {
+            mBatchWroteLocations.set(Boolean.TRUE);
+        } else {
+            invalidateLocationIds();
+        }
+    }
+
+    private void invalidateLocationIds() {
+        synchronized (mLocationIds) {
+            mLocationIdsGeneration++;
+            mLocationIds.clear();
+        }
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
+        long locationId = getLocationId(locationSetting);
+        if (locationId != -1) {
+            return getWeatherByLocationId(locationId, startDate, projection, sortOrder);
+        }
+
         String[] selectionArgs;
         String selection;
 
@@ -98,6 +238,11 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
+        long locationId = getLocationId(locationSetting);
+        if (locationId != -1) {
+            return getWeatherByLocationIdAndDate(locationId, date, projection, sortOrder);
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -128,6 +273,8 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_FORECAST + "/#", WEATHER_WITH_LOCATION_ID);
+        matcher.addURI(authority, WeatherContract.PATH_FORECAST + "/#/#", WEATHER_WITH_LOCATION_ID_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
         return matcher;
@@ -140,6 +287,8 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mChangeNotifier = ChangeNotifier.getInstance(getContext());
+        mForecastCache = ForecastCache.getInstance(getContext());
         return true;
     }
 
@@ -160,6 +309,10 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
             case WEATHER_WITH_LOCATION:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_WITH_LOCATION_ID_AND_DATE:
+                return WeatherContract.WeatherEntry.CONTENT_ITEM_TYPE;
+            case WEATHER_WITH_LOCATION_ID:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
@@ -175,6 +328,7 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
+        Uri notificationUri = uri;
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
@@ -187,6 +341,24 @@ public class WeatherProvider extends ContentProvider {
                 retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
                 break;
             }
+            // "forecast/#/#"
+            case WEATHER_WITH_LOCATION_ID_AND_DATE: {
+                retCursor = getWeatherByLocationIdAndDate(
+                        WeatherContract.WeatherEntry.getLocationIdFromUri(uri),
+                        WeatherContract.WeatherEntry.getDateFromUri(uri), projection, sortOrder);
+                // Weather writes are notified on the weather Uri, which forecast/ isn't under.
+                notificationUri = WeatherContract.WeatherEntry.CONTENT_URI;
+                break;
+            }
+            // "forecast/#"
+            case WEATHER_WITH_LOCATION_ID: {
+                retCursor = getWeatherByLocationId(
+                        WeatherContract.WeatherEntry.getLocationIdFromUri(uri),
+                        WeatherContract.WeatherEntry.getStartDateFromUri(uri), projection,
+                        sortOrder);
+                notificationUri = WeatherContract.WeatherEntry.CONTENT_URI;
+                break;
+            }
             // "weather"
             case WEATHER: {
                 retCursor = mOpenHelper.getReadableDatabase().query(
@@ -217,7 +389,7 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        retCursor.setNotificationUri(getContext().getContentResolver(), notificationUri);
         return retCursor;
     }
 
@@ -233,25 +405,46 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
-                if ( _id > 0 )
-                    returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
-                else
+                WeatherBatch batch;
+                try {
+                    batch = WeatherBatch.fromContentValues(new ContentValues[]{values});
+                } catch (IllegalArgumentException e) {
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                }
+                writeWeather(db, batch);
+                long _id = batch.ids[0];
+                if ( _id <= 0 )
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                if ( !batch.changed[0] ) {
+                    // Already stored as is: nothing was written, so there's nothing to notify.
+                    return WeatherContract.WeatherEntry.buildUnchangedWeatherUri(_id);
+                }
+                returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 break;
             }
             case LOCATION: {
+                // A location is stored once.  Inserting it again hands back the row already
+                // there, so a batch can refer to a location without looking it up first.
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                if (locationSetting != null) {
+                    long existingId = getLocationId(locationSetting);
+                    if (existingId != -1) {
+                        return WeatherContract.LocationEntry.buildLocationUri(existingId);
+                    }
+                }
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                locationsWritten();
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -270,17 +463,26 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                if (rowsDeleted != 0) {
+                    locationsWritten();
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
+    // Cached forecasts go first and right away; observers hear about it shortly after.
+    private void notifyChange(Uri uri) {
+        mForecastCache.invalidate();
+        mChangeNotifier.notifyChange(uri);
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -305,12 +507,15 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                if (rowsUpdated != 0) {
+                    locationsWritten();
+                }
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,27 +526,108 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
+                // Callers get their dates back normalized, as stored.
+                for (ContentValues value : values) {
+                    normalizeDate(value);
+                }
+                int returnCount = writeWeather(db, WeatherBatch.fromContentValues(values));
+                // A sync that brought nothing new shouldn't wake up every observer.
+                if (returnCount > 0) {
+                    notifyChange(uri);
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    private int writeWeather(SQLiteDatabase db, WeatherBatch batch) {
+        WeatherBulkWriter batchWriter = mBatchWriter.get();
+        WeatherBulkWriter writer = batchWriter != null ? batchWriter : new WeatherBulkWriter(db);
+        db.beginTransaction();
+        try {
+            int returnCount = writer.write(batch);
+            db.setTransactionSuccessful();
+            return returnCount;
+        } finally {
+            db.endTransaction();
+            if (writer != batchWriter) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Applies the operations in a single transaction: either all of them are stored or none is,
+     * and observers are notified once, after the last one.  Weather inserts keep the contract of
+     * {@link #insert}, so the results of unchanged rows are
+     * {@link WeatherContract.WeatherEntry#buildUnchangedWeatherUri unchanged Uris}, and a location
+     * insert returns the existing row when the location is already stored.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        return applyBatch(operations, new SparseArray<WeatherBatch>(0));
+    }
+
+    /**
+     * Applies the operations as {@link #applyBatch(ArrayList)} does, along with weather rows that
+     * skip ContentValues altogether.  In-process callers such as the sync adapter reach it
+     * through {@link android.content.ContentProviderClient#getLocalContentProvider()}.
+     * <p>
+     * The batch at index {@code i} of {@code weather} is written right after operation
+     * {@code i}, which must insert its location, and every row in it goes to the location that
+     * insert returned; an operation that returns anything else fails the batch with an
+     * {@link OperationApplicationException}.  Rows already stored with the same values are skipped;
+     * {@link WeatherBatch#changed} tells which rows were written.
+     */
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations,
+                                              SparseArray<WeatherBatch> weather)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherBulkWriter writer = new WeatherBulkWriter(db);
+        boolean successful = false;
+        mChangeNotifier.beginBatch();
+        db.beginTransaction();
+        mBatchWriter.set(writer);
+        try {
+            ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = operations.get(i).apply(this, results, i);
+                WeatherBatch batch = weather.get(i);
+                if (batch != null) {
+                    Uri locationUri = results[i].uri;
+                    if (locationUri == null || sUriMatcher.match(locationUri) != LOCATION) {
+                        throw new OperationApplicationException(
+                                "Operation " + i + " did not insert a location: " + locationUri);
+                    }
+                    Arrays.fill(batch.locationId, 0, batch.count,
+                            ContentUris.parseId(locationUri));
+                    if (writer.write(batch) > 0) {
+                        notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+            return results;
+        } finally {
+            mBatchWriter.remove();
+            db.endTransaction();
+            writer.close();
+            boolean wroteLocations = mBatchWroteLocations.get() != null;
+            mBatchWroteLocations.remove();
+            // Lookups made inside a batch that failed may have seen locations that were rolled
+            // back.
+            if (wroteLocations || !successful) {
+                invalidateLocationIds();
+            }
+            // Forecasts loaded while the batch was open were read from before it.
+            mForecastCache.invalidate();
+            mChangeNotifier.endBatch();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
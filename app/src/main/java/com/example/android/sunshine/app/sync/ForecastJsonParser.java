@@ -0,0 +1,299 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
+/**
+ * Token based parser for the OpenWeatherMap daily forecast response.
+ * <p>
+ * The response is read straight from the network stream with a {@link JsonReader}, so neither
+ * the raw body nor a {@link org.json.JSONObject} tree is ever held in memory.  Only the handful
+ * of fields Sunshine stores are kept, in primitive arrays indexed by day.
+ */
+public class ForecastJsonParser {
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // A daily request asks for 14 days; hourly payloads grow the arrays as needed.
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The parsed forecast.  Day {@code i} of the response is found at index {@code i} of each
+     * array, and only the first {@link #count} entries are valid.
+     */
+    public static final class Forecast {
+        /** The "cod" field of the response, or -1 if the response didn't carry one. */
+        public int messageCode = -1;
+
+        public String cityName;
+        public double cityLatitude;
+        public double cityLongitude;
+        boolean hasCity;
+        boolean hasList;
+
+        public int count;
+        public double[] pressure = new double[DEFAULT_CAPACITY];
+        public int[] humidity = new int[DEFAULT_CAPACITY];
+        public double[] windSpeed = new double[DEFAULT_CAPACITY];
+        public double[] windDirection = new double[DEFAULT_CAPACITY];
+        public double[] high = new double[DEFAULT_CAPACITY];
+        public double[] low = new double[DEFAULT_CAPACITY];
+        public String[] description = new String[DEFAULT_CAPACITY];
+        public int[] weatherId = new int[DEFAULT_CAPACITY];
+
+        private void ensureCapacity(int size) {
+            if (size <= pressure.length) {
+                return;
+            }
+            int newLength = Math.max(size, pressure.length * 2);
+            pressure = Arrays.copyOf(pressure, newLength);
+            humidity = Arrays.copyOf(humidity, newLength);
+            windSpeed = Arrays.copyOf(windSpeed, newLength);
+            windDirection = Arrays.copyOf(windDirection, newLength);
+            high = Arrays.copyOf(high, newLength);
+            low = Arrays.copyOf(low, newLength);
+            description = Arrays.copyOf(description, newLength);
+            weatherId = Arrays.copyOf(weatherId, newLength);
+        }
+    }
+
+    /**
+     * Parses a forecast response.  The stream is consumed but not closed.
+     *
+     * @param in the response body, as read from the connection
+     * @return the parsed forecast.  If the response reports an error, only
+     * {@link Forecast#messageCode} is meaningful.
+     * @throws JSONException if the body isn't a well-formed forecast document
+     * @throws IOException   if the stream fails or ends before the document is complete
+     */
+    public static Forecast parse(InputStream in) throws JSONException, IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        Forecast forecast = new Forecast();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name) && !skipNull(reader)) {
+                    // OWM sends the code as a string on some endpoints; nextInt coerces it.
+                    forecast.messageCode = reader.nextInt();
+                } else if (OWM_CITY.equals(name) && !skipNull(reader)) {
+                    readCity(reader, forecast);
+                } else if (OWM_LIST.equals(name) && !skipNull(reader)) {
+                    readList(reader, forecast);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        }
+
+        // Error responses ("cod" != 200) carry neither a city nor a list.
+        boolean isError = forecast.messageCode != -1 &&
+                forecast.messageCode != HttpURLConnection.HTTP_OK;
+        if (!isError && (!forecast.hasCity || !forecast.hasList)) {
+            throw new JSONException("Forecast response is missing the city or the list");
+        }
+        return forecast;
+    }
+
+    private static void readCity(JsonReader reader, Forecast forecast) throws IOException {
+        boolean hasName = false;
+        boolean hasCoord = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name) && !skipNull(reader)) {
+                forecast.cityName = reader.nextString();
+                hasName = true;
+            } else if (OWM_COORD.equals(name) && !skipNull(reader)) {
+                hasCoord = readCoord(reader, forecast);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        forecast.hasCity = hasName && hasCoord;
+    }
+
+    private static boolean readCoord(JsonReader reader, Forecast forecast) throws IOException {
+        boolean hasLatitude = false;
+        boolean hasLongitude = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_LATITUDE.equals(name) && !skipNull(reader)) {
+                forecast.cityLatitude = reader.nextDouble();
+                hasLatitude = true;
+            } else if (OWM_LONGITUDE.equals(name) && !skipNull(reader)) {
+                forecast.cityLongitude = reader.nextDouble();
+                hasLongitude = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return hasLatitude && hasLongitude;
+    }
+
+    private static void readList(JsonReader reader, Forecast forecast) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            int i = forecast.count;
+            forecast.ensureCapacity(i + 1);
+            readDay(reader, forecast, i);
+            forecast.count++;
+        }
+        reader.endArray();
+        forecast.hasList = true;
+    }
+
+    private static void readDay(JsonReader reader, Forecast forecast, int i) throws IOException {
+        // Same fields the JSONObject based parser required; a missing one is a bad document.
+        int found = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (skipNull(reader)) {
+                continue;
+            }
+            switch (name) {
+                case OWM_PRESSURE:
+                    forecast.pressure[i] = reader.nextDouble();
+                    found |= 1;
+                    break;
+                case OWM_HUMIDITY:
+                    forecast.humidity[i] = reader.nextInt();
+                    found |= 1 << 1;
+                    break;
+                case OWM_WINDSPEED:
+                    forecast.windSpeed[i] = reader.nextDouble();
+                    found |= 1 << 2;
+                    break;
+                case OWM_WIND_DIRECTION:
+                    forecast.windDirection[i] = reader.nextDouble();
+                    found |= 1 << 3;
+                    break;
+                case OWM_TEMPERATURE:
+                    if (readTemperature(reader, forecast, i)) {
+                        found |= 1 << 4;
+                    }
+                    break;
+                case OWM_WEATHER:
+                    if (readWeather(reader, forecast, i)) {
+                        found |= 1 << 5;
+                    }
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (found != 0x3f) {
+            throw new IllegalStateException("Forecast day " + i + " is missing fields");
+        }
+    }
+
+    private static boolean readTemperature(JsonReader reader, Forecast forecast, int i)
+            throws IOException {
+        boolean hasMax = false;
+        boolean hasMin = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MAX.equals(name) && !skipNull(reader)) {
+                forecast.high[i] = reader.nextDouble();
+                hasMax = true;
+            } else if (OWM_MIN.equals(name) && !skipNull(reader)) {
+                forecast.low[i] = reader.nextDouble();
+                hasMin = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return hasMax && hasMin;
+    }
+
+    private static boolean readWeather(JsonReader reader, Forecast forecast, int i)
+            throws IOException {
+        // Description is in a child array called "weather", which is 1 element long.
+        // That element also contains a weather code.
+        boolean hasDescription = false;
+        boolean hasId = false;
+        boolean first = true;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (!first) {
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_DESCRIPTION.equals(name) && !skipNull(reader)) {
+                    forecast.description[i] = reader.nextString();
+                    hasDescription = true;
+                } else if (OWM_WEATHER_ID.equals(name) && !skipNull(reader)) {
+                    forecast.weatherId[i] = reader.nextInt();
+                    hasId = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+        return hasDescription && hasId;
+    }
+
+    /**
+     * Consumes the next value if it is a JSON null.
+     *
+     * @return true if a null was skipped
+     */
+    private static boolean skipNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+}
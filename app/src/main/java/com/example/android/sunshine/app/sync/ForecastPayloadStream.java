@@ -0,0 +1,166 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The body of a forecast response, decoded and bounded.
+ * <p>
+ * The request advertises gzip itself, so the platform leaves the body alone and it is inflated
+ * here instead.  That way both the compressed size on the wire and the decoded size can be
+ * counted.  Deflate isn't offered: servers disagree on whether it comes with a zlib header, and
+ * gzip is what they all send.  Reads go straight through to the decoder, whose own buffer and
+ * the reader's on top of it are all the buffering needed, and a body that decodes past the
+ * limit fails with an {@link IOException} before the parser sees the rest of it.
+ */
+final class ForecastPayloadStream extends FilterInputStream {
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+
+    private final CountingInputStream mWire;
+    private final long mMaxDecodedBytes;
+    private final SyncMetrics mMetrics;
+
+    private long mDecodedBytes;
+    private boolean mClosed;
+
+    private ForecastPayloadStream(CountingInputStream wire, InputStream decoded,
+                                  long maxDecodedBytes, SyncMetrics metrics) {
+        super(decoded);
+        mWire = wire;
+        mMaxDecodedBytes = maxDecodedBytes;
+        mMetrics = metrics;
+    }
+
+    /**
+     * Asks the server for a compressed body.  Must be called before the connection is opened.
+     */
+    static void requestCompression(HttpURLConnection connection) {
+        connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+    }
+
+    /**
+     * Opens the body of a successful response.  The sizes are recorded in {@code metrics} when
+     * the stream is closed.
+     *
+     * @param maxDecodedBytes the largest decoded body that will be accepted
+     * @throws IOException if the body can't be read, or announces a size above the limit
+     */
+    static ForecastPayloadStream open(HttpURLConnection connection, long maxDecodedBytes,
+                                      SyncMetrics metrics) throws IOException {
+        // A compressed body only grows when decoded, so a declared length over the limit is
+        // already too big.
+        int declaredLength = connection.getContentLength();
+        if (declaredLength > maxDecodedBytes) {
+            throw new IOException("Forecast payload of " + declaredLength +
+                    " bytes exceeds " + maxDecodedBytes);
+        }
+
+        CountingInputStream wire = new CountingInputStream(connection.getInputStream());
+        String encoding = connection.getContentEncoding();
+        InputStream decoded;
+        if (ENCODING_GZIP.equalsIgnoreCase(encoding)) {
+            decoded = new GZIPInputStream(wire, GZIP_BUFFER_SIZE);
+        } else {
+            decoded = wire;
+        }
+        return new ForecastPayloadStream(wire, decoded, maxDecodedBytes, metrics);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            countDecoded(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count > 0) {
+            countDecoded(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        countDecoded(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Rereading marked bytes would count them twice.
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        try {
+            super.close();
+        } finally {
+            mMetrics.recordPayload(mWire.getCount(), mDecodedBytes);
+        }
+    }
+
+    private void countDecoded(long count) throws IOException {
+        mDecodedBytes += count;
+        if (mDecodedBytes > mMaxDecodedBytes) {
+            throw new IOException("Forecast payload exceeds " + mMaxDecodedBytes + " bytes");
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, i.e. the body as it came off the wire.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                mCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
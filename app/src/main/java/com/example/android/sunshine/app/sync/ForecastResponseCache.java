@@ -0,0 +1,84 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.R;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Remembers, per location query, the HTTP validators of the last forecast we stored and when we
+ * last heard from the server.  The sync adapter uses it to skip requests while the stored
+ * forecast is still fresh and to turn the remaining ones into conditional GETs.
+ * <p>
+ * Entries are kept in their own preferences file, so wiping them never touches user settings.
+ */
+public class ForecastResponseCache {
+
+    private static final String PREFS_NAME = "forecast_response_cache";
+
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String SUFFIX_ETAG = "|etag";
+    private static final String SUFFIX_LAST_MODIFIED = "|last_modified";
+    private static final String SUFFIX_VALIDATED_AT = "|validated_at";
+
+    private final SharedPreferences mPrefs;
+    private final long mFreshnessWindowMillis;
+
+    public ForecastResponseCache(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mFreshnessWindowMillis = 1000L *
+                context.getResources().getInteger(R.integer.sync_freshness_window_seconds);
+    }
+
+    /**
+     * @return true if the server confirmed the stored forecast for this location less than one
+     * freshness window ago.
+     */
+    public boolean isFresh(String locationQuery, long now) {
+        long validatedAt = mPrefs.getLong(locationQuery + SUFFIX_VALIDATED_AT, 0);
+        return validatedAt > 0 && now >= validatedAt && now - validatedAt < mFreshnessWindowMillis;
+    }
+
+    /**
+     * Adds If-None-Match / If-Modified-Since headers for whatever validators we have stored.
+     * Must be called before the connection is opened.
+     */
+    public void addConditionalHeaders(String locationQuery, HttpURLConnection connection) {
+        String etag = mPrefs.getString(locationQuery + SUFFIX_ETAG, null);
+        String lastModified = mPrefs.getString(locationQuery + SUFFIX_LAST_MODIFIED, null);
+        if (!TextUtils.isEmpty(etag)) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+        }
+        if (!TextUtils.isEmpty(lastModified)) {
+            connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    /**
+     * Records the validators of a response whose forecast has been stored in the database.
+     *
+     * @param etag         the response's ETag header, or null
+     * @param lastModified the response's Last-Modified header, or null
+     */
+    public void store(String locationQuery, String etag, String lastModified, long now) {
+        mPrefs.edit()
+                .putString(locationQuery + SUFFIX_ETAG, etag)
+                .putString(locationQuery + SUFFIX_LAST_MODIFIED, lastModified)
+                .putLong(locationQuery + SUFFIX_VALIDATED_AT, now)
+                .apply();
+    }
+
+    /**
+     * Records that the server answered 304 Not Modified, restarting the freshness window.
+     */
+    public void markValidated(String locationQuery, long now) {
+        mPrefs.edit().putLong(locationQuery + SUFFIX_VALIDATED_AT, now).apply();
+    }
+}
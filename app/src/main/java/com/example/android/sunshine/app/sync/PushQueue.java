@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+import android.util.Log;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The queue behind {@link WearablePublisher}: which pushes are waiting, in what order they go
+ * and when a failed one is tried again.  Sending and scheduling are left to the caller, so the
+ * queue runs the same against the Wearable API as against a test.
+ * <p>
+ * Only the latest push for each path is kept, and at most {@link #MAX_PENDING} paths wait at
+ * once.  A push that fails is tried again after a delay that doubles each time, up to
+ * {@link #MAX_ATTEMPTS} times.
+ *
+ * @param <T> the item a push carries
+ */
+final class PushQueue<T> {
+
+    private static final String LOG_TAG = PushQueue.class.getSimpleName();
+
+    // Pushes are coalesced per path, so this bounds the paths waiting rather than the pushes.
+    static final int MAX_PENDING = 4;
+    static final int MAX_ATTEMPTS = 6;
+    static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    static final int SEND_OK = 0;
+    static final int SEND_FAILED = 1;
+    // The phone has no Wearable API at all, and so never a watch to send to.
+    static final int SEND_API_UNAVAILABLE = 2;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({SEND_OK, SEND_FAILED, SEND_API_UNAVAILABLE})
+    @interface SendResult {
+    }
+
+    /**
+     * Sends the items, on the thread the {@link Scheduler} runs the queue on.
+     */
+    interface Sender<T> {
+        @SendResult
+        int send(T item);
+
+        /**
+         * Called when the queue has nothing more to send for now.
+         */
+        void idle();
+    }
+
+    /**
+     * Runs the queue.  Tasks must run one at a time.
+     */
+    interface Scheduler {
+        void execute(Runnable task);
+
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final Sender<T> mSender;
+    private final Scheduler mScheduler;
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // The push waiting for each path, oldest first.  Guarded by itself, as is mDraining.
+    private final LinkedHashMap<String, Push<T>> mPending = new LinkedHashMap<String, Push<T>>();
+    // Whether a drain is running or scheduled.
+    private boolean mDraining;
+    // Only touched by the scheduler's tasks.
+    private int mFailuresInRow;
+
+    private final AtomicInteger mSent = new AtomicInteger();
+    private final AtomicInteger mCoalesced = new AtomicInteger();
+    private final AtomicInteger mDropped = new AtomicInteger();
+    private final AtomicInteger mFailures = new AtomicInteger();
+    private final AtomicLong mTotalLatencyMillis = new AtomicLong();
+    private final AtomicLong mMaxLatencyMillis = new AtomicLong();
+
+    PushQueue(Sender<T> sender, Scheduler scheduler) {
+        mSender = sender;
+        mScheduler = scheduler;
+    }
+
+    /**
+     * Queues an item for {@code path}, in place of any item for that path not yet sent.
+     *
+     * @param onSent run on the scheduler's thread once the item has been sent, or null
+     */
+    void publish(String path, T item, Runnable onSent) {
+        Push<T> push = new Push<T>(path, item, onSent);
+        synchronized (mPending) {
+            if (mPending.remove(path) != null) {
+                mCoalesced.incrementAndGet();
+            } else if (mPending.size() >= MAX_PENDING) {
+                Iterator<Map.Entry<String, Push<T>>> oldest = mPending.entrySet().iterator();
+                Log.d(LOG_TAG, "Dropping push to " + oldest.next().getKey());
+                oldest.remove();
+                mDropped.incrementAndGet();
+            }
+            mPending.put(path, push);
+            if (!mDraining) {
+                mDraining = true;
+                mScheduler.execute(mDrain);
+            }
+        }
+    }
+
+    // Sends what's pending until the queue is empty or a push fails.
+    private void drain() {
+        while (true) {
+            Push<T> push;
+            synchronized (mPending) {
+                Iterator<Push<T>> pending = mPending.values().iterator();
+                if (!pending.hasNext()) {
+                    mDraining = false;
+                    break;
+                }
+                push = pending.next();
+                pending.remove();
+            }
+
+            int result = mSender.send(push.item);
+            if (result == SEND_OK) {
+                mFailuresInRow = 0;
+                recordSent(push);
+                if (push.onSent != null) {
+                    push.onSent.run();
+                }
+                continue;
+            }
+
+            mFailures.incrementAndGet();
+            if (result == SEND_API_UNAVAILABLE) {
+                dropAll(push);
+                break;
+            }
+            mFailuresInRow++;
+            retryLater(push);
+            break;
+        }
+        mSender.idle();
+    }
+
+    // Retrying can't help without the API, so everything waiting goes, along with the push that
+    // failed.  The next publish tries again.
+    private void dropAll(Push<T> failed) {
+        synchronized (mPending) {
+            int dropped = mPending.size() + (mPending.containsKey(failed.path) ? 0 : 1);
+            Log.d(LOG_TAG, "No Wearable API, dropping " + dropped + " pushes");
+            mDropped.addAndGet(dropped);
+            mPending.clear();
+            mDraining = false;
+        }
+    }
+
+    // Puts a failed push back in the queue, unless a newer one took its place, and tries the
+    // queue again after the backoff.
+    private void retryLater(Push<T> push) {
+        push.attempts++;
+        String path = push.path;
+        synchronized (mPending) {
+            if (mPending.containsKey(path)) {
+                mCoalesced.incrementAndGet();
+            } else if (push.attempts >= MAX_ATTEMPTS) {
+                Log.d(LOG_TAG, "Giving up on " + path + " after " + push.attempts + " attempts");
+                mDropped.incrementAndGet();
+            } else {
+                // Ahead of newer paths, as it was queued before them.
+                LinkedHashMap<String, Push<T>> pending =
+                        new LinkedHashMap<String, Push<T>>(mPending);
+                mPending.clear();
+                mPending.put(path, push);
+                mPending.putAll(pending);
+            }
+            if (mPending.isEmpty()) {
+                mDraining = false;
+                return;
+            }
+        }
+        long delay = backoffMillis(mFailuresInRow);
+        Log.d(LOG_TAG, "Retrying in " + delay + " ms");
+        mScheduler.schedule(mDrain, delay);
+    }
+
+    /**
+     * Returns how long to wait before trying again after {@code failuresInRow} failures.
+     */
+    static long backoffMillis(int failuresInRow) {
+        return Math.min(INITIAL_BACKOFF_MILLIS << Math.min(failuresInRow - 1, 16),
+                MAX_BACKOFF_MILLIS);
+    }
+
+    private void recordSent(Push<T> push) {
+        long latency = SystemClock.elapsedRealtime() - push.queuedAt;
+        mSent.incrementAndGet();
+        mTotalLatencyMillis.addAndGet(latency);
+        long max;
+        do {
+            max = mMaxLatencyMillis.get();
+        } while (latency > max && !mMaxLatencyMillis.compareAndSet(max, latency));
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "Put %s after %d ms; %d sent, %d coalesced, %d dropped, %d failed attempts",
+                push.path, latency, getSentCount(), getCoalescedCount(),
+                getDroppedCount(), getFailureCount()));
+    }
+
+    int getSentCount() {
+        return mSent.get();
+    }
+
+    int getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    int getDroppedCount() {
+        return mDropped.get();
+    }
+
+    int getFailureCount() {
+        return mFailures.get();
+    }
+
+    long getAverageLatencyMillis() {
+        int sent = getSentCount();
+        return sent == 0 ? 0 : mTotalLatencyMillis.get() / sent;
+    }
+
+    long getMaxLatencyMillis() {
+        return mMaxLatencyMillis.get();
+    }
+
+    private static final class Push<T> {
+        final String path;
+        final T item;
+        final Runnable onSent;
+        final long queuedAt = SystemClock.elapsedRealtime();
+        int attempts;
+
+        Push(String path, T item, Runnable onSent) {
+            this.path = path;
+            this.item = item;
+            this.onSent = onSent;
+        }
+    }
+}
@@ -7,16 +7,17 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -28,37 +29,37 @@ import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastCache;
+import com.example.android.sunshine.app.data.ForecastData;
+import com.example.android.sunshine.app.data.WeatherBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.UUID;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
@@ -75,35 +76,14 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
     public static final String SUNSHINE_DATA = "/weather-data";
-    public static final String UID = "uuid";
-    public static final String HIGH = "high";
-    public static final String LOW = "low";
-    public static final String ICON = "icon";
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // Upper bound on concurrent forecast requests when every saved location is synced.
+    private static final int MAX_PARALLEL_FETCHES = 4;
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
 
-    GoogleApiClient mGoogleApiClient;
-
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
-
-        if (mGoogleApiClient == null) {
-            mGoogleApiClient = new GoogleApiClient.Builder(context)
-                    .addApi(Wearable.API)
-                    .build();
-        }
     }
 
     /**
@@ -218,15 +198,126 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public void onPerformSync(Account account, Bundle extras, String authority,
                               ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        long now = System.currentTimeMillis();
+        ForecastResponseCache responseCache = new ForecastResponseCache(getContext());
+        SyncMetrics metrics = new SyncMetrics();
+        // Someone asked for this sync, say by tapping Refresh, so it goes to the server even if
+        // the last answer is recent.
+        boolean manual = extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false);
+
+        List<String> locations = getLocationsToSync(preferredLocation);
+        List<FetchResult> results =
+                fetchForecasts(locations, responseCache, metrics, manual, now);
+        applyForecasts(provider, results, preferredLocation, responseCache, now);
+        metrics.log();
+    }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+    /**
+     * Returns the location queries this sync should refresh.  That's the preferred location,
+     * followed by every other saved location when the user asked to keep them all up to date.
+     */
+    private List<String> getLocationsToSync(String preferredLocation) {
+        List<String> locations = new ArrayList<String>();
+        locations.add(preferredLocation);
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        Context context = getContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean syncAllLocations = prefs.getBoolean(
+                context.getString(R.string.pref_sync_all_locations_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_sync_all_locations_default)));
+        if (!syncAllLocations) {
+            return locations;
+        }
+
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                String location = cursor.getString(0);
+                if (!preferredLocation.equals(location)) {
+                    locations.add(location);
+                }
+            }
+            cursor.close();
+        }
+        return locations;
+    }
+
+    /**
+     * Fetches the forecast of every location.  A single location is fetched on the sync thread;
+     * several are fetched concurrently, at most {@link #MAX_PARALLEL_FETCHES} at a time.
+     *
+     * @param manual whether the user asked for the sync; see {@link #fetchForecast}
+     * @return one result per location, in the same order as {@code locations}
+     */
+    private List<FetchResult> fetchForecasts(final List<String> locations,
+                                             final ForecastResponseCache responseCache,
+                                             final SyncMetrics metrics, final boolean manual,
+                                             final long now) {
+        List<FetchResult> results = new ArrayList<FetchResult>(locations.size());
+        if (locations.size() == 1) {
+            results.add(fetchForecast(locations.get(0), responseCache, metrics, manual, now));
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(locations.size(), MAX_PARALLEL_FETCHES));
+        try {
+            List<Future<FetchResult>> futures = new ArrayList<Future<FetchResult>>(locations.size());
+            for (final String location : locations) {
+                futures.add(executor.submit(new Callable<FetchResult>() {
+                    @Override
+                    public FetchResult call() {
+                        return fetchForecast(location, responseCache, metrics, manual, now);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching " + locations.get(i), e);
+                    FetchResult failed = new FetchResult(locations.get(i));
+                    failed.status = LOCATION_STATUS_SERVER_DOWN;
+                    results.add(failed);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled.  Whatever already arrived is still worth keeping.
+            Log.d(LOG_TAG, "Sync interrupted after " + results.size() + " locations");
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Fetches and parses the forecast of one location.  This touches neither the database nor
+     * the location status, so it is safe to run on a worker thread.
+     *
+     * @param manual whether the user asked for the sync.  A manual sync always asks the server,
+     *               even within the freshness window, though still conditionally.
+     */
+    private FetchResult fetchForecast(String locationQuery, ForecastResponseCache responseCache,
+                                      SyncMetrics metrics, boolean manual, long now) {
+        FetchResult result = new FetchResult(locationQuery);
+
+        // Validators are only worth sending if we still have the forecast they describe.
+        boolean haveLocalForecast = hasLocalForecast(locationQuery, now);
+        if (haveLocalForecast && !manual && responseCache.isFresh(locationQuery, now)) {
+            Log.d(LOG_TAG, "Forecast for " + locationQuery + " is still fresh, skipping fetch");
+            result.notModified = true;
+            result.status = LOCATION_STATUS_OK;
+            return result;
+        }
+
+        // This needs to be declared outside the try/catch
+        // so that it can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
 
         String format = "json";
         String units = "metric";
@@ -257,271 +348,254 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
+            ForecastPayloadStream.requestCompression(urlConnection);
+            if (haveLocalForecast) {
+                responseCache.addConditionalHeaders(locationQuery, urlConnection);
+            }
             urlConnection.connect();
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing to parse, store or broadcast: what we have is what the server has.
+                Log.d(LOG_TAG, "Forecast for " + locationQuery + " not modified");
+                responseCache.markValidated(locationQuery, now);
+                metrics.recordNotModified();
+                result.notModified = true;
+                result.status = LOCATION_STATUS_OK;
+                return result;
             }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+
+            // Parse the forecast straight off the wire.  An empty, truncated or oversized body
+            // surfaces as an IOException, just like a failed read.
+            InputStream inputStream = ForecastPayloadStream.open(urlConnection,
+                    getContext().getResources().getInteger(R.integer.sync_max_forecast_bytes),
+                    metrics);
+            ForecastJsonParser.Forecast forecast;
+            try {
+                forecast = ForecastJsonParser.parse(inputStream);
+            } finally {
+                try {
+                    inputStream.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            // do we have an error?
+            switch (forecast.messageCode) {
+                case -1:
+                case HttpURLConnection.HTTP_OK:
+                    result.status = LOCATION_STATUS_OK;
+                    result.forecast = forecast;
+                    result.etag = urlConnection.getHeaderField(ForecastResponseCache.HEADER_ETAG);
+                    result.lastModified = urlConnection.getHeaderField(
+                            ForecastResponseCache.HEADER_LAST_MODIFIED);
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    result.status = LOCATION_STATUS_INVALID;
+                    break;
+                default:
+                    result.status = LOCATION_STATUS_SERVER_DOWN;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            result.status = LOCATION_STATUS_SERVER_DOWN;
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            result.status = LOCATION_STATUS_SERVER_INVALID;
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
         }
-        return;
+        return result;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     * <p>
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Returns whether the database holds any forecast for the location from today on.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
+    private boolean hasLocalForecast(String locationQuery, long now) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(locationQuery, now),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." +
+                        WeatherContract.WeatherEntry._ID},
+                null, null, null);
+        if (cursor == null) {
+            return false;
+        }
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
+            return cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
 
-            // do we have an error?
-            if (forecastJson.has(OWM_MESSAGE_CODE)) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
+    /**
+     * Stores every fetched forecast, the locations it belongs to and the purge of past days as a
+     * single batch, so the whole sync is one transaction and observers hear about it once.
+     * Widgets, Muzei and the notification are updated once at the end, and only if some row
+     * actually changed.  Locations whose forecast is known to be current are left alone.
+     */
+    private void applyForecasts(ContentProviderClient provider, List<FetchResult> results,
+                                String preferredLocation, ForecastResponseCache responseCache,
+                                long now) {
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        // now we work exclusively in UTC
+        dayTime = new Time();
+
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(results.size() + 1);
+        SparseArray<WeatherBatch> weather = new SparseArray<WeatherBatch>(results.size());
+        List<FetchResult> stored = new ArrayList<FetchResult>(results.size());
+        int rowCount = 0;
+        FetchResult preferred = null;
+        for (FetchResult result : results) {
+            if (result.locationQuery.equals(preferredLocation)) {
+                preferred = result;
             }
+            ForecastJsonParser.Forecast forecast = result.forecast;
+            if (forecast == null || forecast.count == 0) {
+                continue;
+            }
+            // The provider returns the stored location when there is one, and writes the
+            // weather rows under whichever id the insert returned.
+            weather.put(operations.size(), newWeatherBatch(forecast, dayTime, julianStartDay));
+            operations.add(newLocationInsert(result.locationQuery, forecast));
+            rowCount += forecast.count;
+            stored.add(result);
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for (int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                if (i == 0) {
-                    sendDataToWatches(high, low, weatherId);
-                }
-
-                cVVector.add(weatherValues);
+        // add to database
+        int changedCount = 0;
+        if (!stored.isEmpty()) {
+            // delete old data so we don't build up an endless history
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                            new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))})
+                    .build());
+            // The provider is declared in this process, so the rows needn't go through Binder.
+            WeatherProvider weatherProvider =
+                    (WeatherProvider) provider.getLocalContentProvider();
+            try {
+                weatherProvider.applyBatch(operations, weather);
+            } catch (OperationApplicationException | SQLException e) {
+                // Nothing was stored, so keep the validators out of the cache as well; the next
+                // sync has to fetch these forecasts in full.  The server did nothing wrong, so
+                // the location status stays as it was.
+                Log.e(LOG_TAG, "Error storing forecasts", e);
+                return;
+            }
+            // Only rows that differ from what's stored are written and counted.
+            for (int i = 0; i < weather.size(); i++) {
+                changedCount += weather.valueAt(i).getChangedCount();
             }
 
-            int inserted = 0;
-            // add to database
-            if (cVVector.size() > 0) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry
-                        .CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
+            // Publish the new forecasts before anyone is told about them, so that the widgets,
+            // Muzei and the notification below all find them in memory.
+            ForecastCache forecastCache = ForecastCache.getInstance(getContext());
+            for (FetchResult result : stored) {
+                responseCache.store(result.locationQuery, result.etag, result.lastModified, now);
+                forecastCache.load(result.locationQuery);
             }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        }
+        if (changedCount > 0) {
+            updateWidgets();
+            updateMuzei();
+            notifyWeather();
+        }
+        if (preferred != null && (stored.contains(preferred) || preferred.notModified)) {
+            sendDataToWatches(preferredLocation, now);
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + changedCount + " of " + rowCount +
+                " rows changed for " + stored.size() + " of " + results.size() + " locations");
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        if (preferred != null && preferred.status != LOCATION_STATUS_UNKNOWN) {
+            setLocationStatus(getContext(), preferred.status);
         }
     }
 
+    private static ContentProviderOperation newLocationInsert(
+            String locationSetting, ForecastJsonParser.Forecast forecast) {
+        return ContentProviderOperation.newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                .withValue(WeatherContract.LocationEntry.COLUMN_CITY_NAME, forecast.cityName)
+                .withValue(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LAT, forecast.cityLatitude)
+                .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LONG, forecast.cityLongitude)
+                .build();
+    }
 
-    public void sendDataToWatches(double high, double low, int weatherId) {
-        Log.d(LOG_TAG, "Sending Weather data");
+    /**
+     * Turns one location's parsed forecast into weather rows.  The provider fills in the
+     * location.
+     */
+    private static WeatherBatch newWeatherBatch(ForecastJsonParser.Forecast forecast,
+                                                Time dayTime, int julianStartDay) {
+        WeatherBatch batch = new WeatherBatch(forecast.count);
+        for (int i = 0; i < forecast.count; i++) {
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            long dateTime = dayTime.setJulianDay(julianStartDay + i);
+            batch.add(0, dateTime, forecast.weatherId[i], forecast.description[i],
+                    forecast.low[i], forecast.high[i], forecast.humidity[i], forecast.pressure[i],
+                    forecast.windSpeed[i], forecast.windDirection[i]);
+        }
+        return batch;
+    }
 
-        if (mGoogleApiClient == null) {
+    /**
+     * Sends the stored forecast to the watch, unless the watch was already sent the same one.
+     * Called once a sync has stored its forecasts; the send itself happens in the background.
+     */
+    private void sendDataToWatches(String locationQuery, long now) {
+        ForecastData forecast = ForecastCache.getInstance(getContext()).get(locationQuery)
+                .since(now);
+        if (forecast.isEmpty()) {
             return;
         }
-
-        mGoogleApiClient.connect();
+        WatchForecast watchForecast =
+                WatchForecast.from(forecast, Utility.isMetric(getContext()));
+        final long hash = watchForecast.contentHash();
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getContext());
+        if (prefs.getLong(WatchForecast.PREF_SENT_HASH, 0) == hash) {
+            Log.d(LOG_TAG, "Watch already has this forecast");
+            return;
+        }
+        Log.d(LOG_TAG, "Sending Weather data");
 
         PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(SUNSHINE_DATA);
         DataMap map = putDataMapRequest.getDataMap();
-        String iconName = Utility.getIconNameForWeatherCondition(weatherId);
-
-        map.putString(UID, UUID.randomUUID().toString());
-        map.putString(HIGH, Utility.formatTemperature(getContext(), high));
-        map.putString(LOW, Utility.formatTemperature(getContext(), low));
-        map.putString(ICON, iconName);
-
-        PutDataRequest request = putDataMapRequest.asPutDataRequest();
-
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        if (!dataItemResult.getStatus().isSuccess()) {
-                            Log.d(LOG_TAG, "Failed to send weather data");
-                        } else {
-                            Log.d(LOG_TAG, "Successfully sent weather data");
-                        }
-                    }
-                });
+        map.putInt(WatchForecast.KEY_VERSION, WatchForecast.VERSION);
+        map.putLong(WatchForecast.KEY_HASH, hash);
+        map.putBoolean(WatchForecast.KEY_METRIC, watchForecast.metric);
+        map.putLongArray(WatchForecast.KEY_DATES, watchForecast.dates);
+        map.putFloatArray(WatchForecast.KEY_HIGHS, watchForecast.highs);
+        map.putFloatArray(WatchForecast.KEY_LOWS, watchForecast.lows);
+        map.putStringArray(WatchForecast.KEY_ICONS, watchForecast.icons);
+
+        WearablePublisher.getInstance(getContext()).publish(putDataMapRequest, new Runnable() {
+            @Override
+            public void run() {
+                // Only now can the next sync skip sending the same forecast.
+                prefs.edit().putLong(WatchForecast.PREF_SENT_HASH, hash).apply();
+            }
+        });
     }
 
-
     private void updateWidgets() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -558,18 +632,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
                 String locationQuery = Utility.getPreferredLocation(context);
 
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate
-                        (locationQuery, System.currentTimeMillis());
+                // the sync has just loaded it into the cache
+                ForecastData forecast = ForecastCache.getInstance(context).get(locationQuery);
+                int today = forecast.indexOfDate(System.currentTimeMillis());
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri,
-                        NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != -1) {
+                    int weatherId = forecast.weatherIds[today];
+                    double high = forecast.maxTemps[today];
+                    double low = forecast.minTemps[today];
+                    String desc = forecast.descriptions[today];
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -652,60 +723,27 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName        A human-readable city name, e.g "Mountain View"
-     * @param lat             the latitude of the city
-     * @param lon             the longitude of the city
-     * @return the row ID of the added location.
+     * Outcome of fetching one location's forecast.  Filled in on a worker thread and applied to
+     * the database once every fetch has finished.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
-                    locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+    static class FetchResult {
+        final String locationQuery;
+        @LocationStatus
+        int status = LOCATION_STATUS_UNKNOWN;
+        // true when the stored forecast is current and there is nothing to apply
+        boolean notModified;
+        ForecastJsonParser.Forecast forecast;
+        String etag;
+        String lastModified;
+
+        FetchResult(String locationQuery) {
+            this.locationQuery = locationQuery;
         }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
     }
 
     @Retention(RetentionPolicy.SOURCE)
@@ -0,0 +1,65 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Network counters for a single sync.  Fetches running in parallel record into the same
+ * instance, and the totals are logged once the sync is done.
+ */
+public class SyncMetrics {
+
+    private static final String LOG_TAG = SyncMetrics.class.getSimpleName();
+
+    private final AtomicInteger mPayloads = new AtomicInteger();
+    private final AtomicInteger mNotModified = new AtomicInteger();
+    private final AtomicLong mWireBytes = new AtomicLong();
+    private final AtomicLong mDecodedBytes = new AtomicLong();
+
+    /**
+     * Records a response body.
+     *
+     * @param wireBytes    size of the body as transferred, before decompression
+     * @param decodedBytes size of the body handed to the parser
+     */
+    void recordPayload(long wireBytes, long decodedBytes) {
+        mPayloads.incrementAndGet();
+        mWireBytes.addAndGet(wireBytes);
+        mDecodedBytes.addAndGet(decodedBytes);
+    }
+
+    /**
+     * Records a 304 response, which has no body.
+     */
+    void recordNotModified() {
+        mNotModified.incrementAndGet();
+    }
+
+    public int getPayloadCount() {
+        return mPayloads.get();
+    }
+
+    public int getNotModifiedCount() {
+        return mNotModified.get();
+    }
+
+    public long getWireBytes() {
+        return mWireBytes.get();
+    }
+
+    public long getDecodedBytes() {
+        return mDecodedBytes.get();
+    }
+
+    void log() {
+        long wireBytes = getWireBytes();
+        long decodedBytes = getDecodedBytes();
+        float ratio = decodedBytes == 0 ? 1f : (float) wireBytes / decodedBytes;
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d bodies, %d not modified, %d bytes on the wire, %d decoded (%.2f)",
+                getPayloadCount(), getNotModifiedCount(), wireBytes, decodedBytes, ratio));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.app.WeatherConditions;
+import com.example.android.sunshine.app.data.ForecastData;
+
+import java.util.Arrays;
+
+/**
+ * The days of the forecast the watch face is sent, from today on.
+ * <p>
+ * Temperatures go in Celsius along with the units to show them in, and icons by name, so the
+ * face formats today's weather itself and moves on to tomorrow's at midnight without waiting
+ * for a sync.  The keys below are the watch's DataMap protocol; the face reads the same ones,
+ * and ignores payloads of a version it doesn't know.
+ */
+public final class WatchForecast {
+
+    public static final int VERSION = 2;
+
+    public static final String KEY_VERSION = "version";
+    public static final String KEY_HASH = "hash";
+    public static final String KEY_METRIC = "metric";
+    public static final String KEY_DATES = "dates";
+    public static final String KEY_HIGHS = "highs";
+    public static final String KEY_LOWS = "lows";
+    public static final String KEY_ICONS = "icons";
+
+    // The content hash of the forecast the watch was last sent, kept in the default preferences.
+    public static final String PREF_SENT_HASH = "watchForecastHash";
+
+    // Enough for the face to get through a week without the phone.
+    static final int MAX_DAYS = 7;
+
+    public final boolean metric;
+    public final long[] dates;
+    public final float[] highs;
+    public final float[] lows;
+    public final String[] icons;
+
+    WatchForecast(boolean metric, long[] dates, float[] highs, float[] lows, String[] icons) {
+        this.metric = metric;
+        this.dates = dates;
+        this.highs = highs;
+        this.lows = lows;
+        this.icons = icons;
+    }
+
+    /**
+     * @param forecast the forecast from today on
+     */
+    public static WatchForecast from(ForecastData forecast, boolean metric) {
+        int days = Math.min(forecast.count, MAX_DAYS);
+        String[] icons = new String[days];
+        for (int i = 0; i < days; i++) {
+            icons[i] = WeatherConditions.getIconName(forecast.weatherIds[i]);
+        }
+        return new WatchForecast(metric, Arrays.copyOf(forecast.dates, days),
+                Arrays.copyOf(forecast.maxTemps, days), Arrays.copyOf(forecast.minTemps, days),
+                icons);
+    }
+
+    /**
+     * Returns a hash of everything the watch is sent, so that a forecast it already has
+     * needn't be sent again.  A new protocol version changes every hash.
+     */
+    public long contentHash() {
+        long hash = VERSION;
+        hash = 31 * hash + (metric ? 1 : 0);
+        for (int i = 0; i < dates.length; i++) {
+            hash = 31 * hash + dates[i];
+            hash = 31 * hash + Float.floatToIntBits(highs[i]);
+            hash = 31 * hash + Float.floatToIntBits(lows[i]);
+            hash = 31 * hash + icons[i].hashCode();
+        }
+        return hash;
+    }
+}
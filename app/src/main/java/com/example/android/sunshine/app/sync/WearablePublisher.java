@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts data items for the watch, one after another on a thread of its own.
+ * <p>
+ * Callers never wait: {@link #publish} queues the item and returns.  Only the latest item for
+ * each path is kept, so a push still waiting when a newer one comes along is replaced rather
+ * than sent; {@link PushQueue} has the rest of the queueing and retry rules.  The client is
+ * connected when there is something to send and disconnected once the queue is empty.
+ */
+public class WearablePublisher {
+
+    private static final String LOG_TAG = WearablePublisher.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 30;
+    private static final long PUT_TIMEOUT_SECONDS = 30;
+
+    private static WearablePublisher sInstance;
+
+    private final GoogleApiClient mClient;
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    private final PushQueue<PutDataRequest> mQueue = new PushQueue<PutDataRequest>(
+            new PushQueue.Sender<PutDataRequest>() {
+                @Override
+                public int send(PutDataRequest request) {
+                    return put(request);
+                }
+
+                @Override
+                public void idle() {
+                    // Don't hold on to the connection between pushes, which come hours apart.
+                    if (mClient.isConnected()) {
+                        mClient.disconnect();
+                    }
+                }
+            },
+            new PushQueue.Scheduler() {
+                @Override
+                public void execute(Runnable task) {
+                    mExecutor.execute(task);
+                }
+
+                @Override
+                public void schedule(Runnable task, long delayMillis) {
+                    mExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+                }
+            });
+
+    private WearablePublisher(Context context) {
+        mClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    public static synchronized WearablePublisher getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearablePublisher(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues a data item to be put, in place of any item for the same path not yet sent.
+     *
+     * @param onSent run on the publisher's thread once the item has been put, or null
+     */
+    public void publish(PutDataMapRequest request, Runnable onSent) {
+        PutDataRequest putRequest = request.asPutDataRequest();
+        mQueue.publish(putRequest.getUri().getPath(), putRequest, onSent);
+    }
+
+    @PushQueue.SendResult
+    private int put(PutDataRequest request) {
+        if (!mClient.isConnected()) {
+            ConnectionResult result =
+                    mClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.isSuccess()) {
+                Log.d(LOG_TAG, "Could not connect: " + result);
+                return result.getErrorCode() == ConnectionResult.API_UNAVAILABLE
+                        ? PushQueue.SEND_API_UNAVAILABLE : PushQueue.SEND_FAILED;
+            }
+        }
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mClient, request)
+                .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (result.getStatus().isSuccess()) {
+            return PushQueue.SEND_OK;
+        }
+        Log.d(LOG_TAG, "Could not put " + request.getUri() + ": " + result.getStatus());
+        return PushQueue.SEND_FAILED;
+    }
+
+    /**
+     * Returns the number of pushes put.
+     */
+    public int getSentCount() {
+        return mQueue.getSentCount();
+    }
+
+    /**
+     * Returns the number of pushes replaced by a newer one for the same path before being put.
+     */
+    public int getCoalescedCount() {
+        return mQueue.getCoalescedCount();
+    }
+
+    /**
+     * Returns the number of pushes given up on, for failing too often or for a full queue.
+     */
+    public int getDroppedCount() {
+        return mQueue.getDroppedCount();
+    }
+
+    /**
+     * Returns the number of attempts that failed to connect or to put.
+     */
+    public int getFailureCount() {
+        return mQueue.getFailureCount();
+    }
+
+    /**
+     * Returns the mean time from publishing a push to its being put, in milliseconds.
+     */
+    public long getAverageLatencyMillis() {
+        return mQueue.getAverageLatencyMillis();
+    }
+
+    /**
+     * Returns the longest time from publishing a push to its being put, in milliseconds.
+     */
+    public long getMaxLatencyMillis() {
+        return mQueue.getMaxLatencyMillis();
+    }
+}
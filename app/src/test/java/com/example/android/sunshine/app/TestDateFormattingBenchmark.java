@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Each of the date helpers through {@link FriendlyDateFormatter} against making its formatters on
+ * every call, as Utility did before.  android.text.format.Time isn't available off the device, so
+ * the old helpers' Time is stood in for by a Calendar, which allocates about as much.  Both
+ * have to give the same strings.  Run with {@code -Pbenchmark}, reusing the formatters also has
+ * to be quicker; a loaded machine makes that too noisy to check on every build.
+ */
+public class TestDateFormattingBenchmark extends TestCase {
+
+    private static final int WARM_UP = 2000;
+    private static final int ITERATIONS = 20000;
+    private static final int ROUNDS = 5;
+    private static final boolean CHECK_TIMINGS = Boolean.getBoolean("benchmark");
+    // A fortnight of days, as a forecast list shows.
+    private static final int DAYS = 14;
+
+    private final TimeZone mTimeZone = TestFriendlyDateFormatter.TIME_ZONE;
+    private final long mNow = TestFriendlyDateFormatter.dayAt(2016, Calendar.JUNE, 8, 12);
+    private final long[] mDates = new long[DAYS];
+    private FriendlyDateFormatter mFormatter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFormatter = TestFriendlyDateFormatter.newFormatter();
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = TestFriendlyDateFormatter.dayAt(2016, Calendar.JUNE, 8 + i, 0);
+        }
+    }
+
+    public void testFriendlyDayString() {
+        compare("getFriendlyDayString", new Case() {
+            @Override
+            public String run(long date) {
+                return mFormatter.getFriendlyDayString(date, true, mNow);
+            }
+        }, new Case() {
+            @Override
+            public String run(long date) {
+                return legacyFriendlyDayString(date);
+            }
+        });
+    }
+
+    public void testFullFriendlyDayString() {
+        compare("getFullFriendlyDayString", new Case() {
+            @Override
+            public String run(long date) {
+                return mFormatter.getFullFriendlyDayString(date, mNow);
+            }
+        }, new Case() {
+            @Override
+            public String run(long date) {
+                return String.format("%1$s, %2$s", legacyDayName(date), legacyMonthDay(date));
+            }
+        });
+    }
+
+    public void testDayName() {
+        compare("getDayName", new Case() {
+            @Override
+            public String run(long date) {
+                return mFormatter.getDayName(date, mNow);
+            }
+        }, new Case() {
+            @Override
+            public String run(long date) {
+                return legacyDayName(date);
+            }
+        });
+    }
+
+    public void testFormattedMonthDay() {
+        compare("getFormattedMonthDay", new Case() {
+            @Override
+            public String run(long date) {
+                return mFormatter.getFormattedMonthDay(date);
+            }
+        }, new Case() {
+            @Override
+            public String run(long date) {
+                return legacyMonthDay(date);
+            }
+        });
+    }
+
+    public void testFormatDate() {
+        compare("formatDate", new Case() {
+            @Override
+            public String run(long date) {
+                return mFormatter.formatDate(date);
+            }
+        }, new Case() {
+            @Override
+            public String run(long date) {
+                DateFormat format = DateFormat.getDateInstance(DateFormat.DEFAULT, Locale.US);
+                format.setTimeZone(mTimeZone);
+                return format.format(new Date(date));
+            }
+        });
+    }
+
+    // Already allocation free; checked so that it stays that way.
+    public void testNormalizeDate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assertTrue("Error: This JVM can't count allocations",
+                threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assertTrue("Error: This JVM can't count allocations",
+                allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // The first pass gets the loop compiled, whichever tests ran before this one; only the
+        // second is measured.
+        long checksum = normalizeDates();
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        checksum += normalizeDates();
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(checksum != 0);
+        assertEquals("Error: normalizeDate should allocate nothing", 0, allocated);
+    }
+
+    private long normalizeDates() {
+        long checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (long date : mDates) {
+                checksum += WeatherContract.normalizeDate(date + i, mTimeZone);
+            }
+        }
+        return checksum;
+    }
+
+    private void compare(String name, Case cached, Case legacy) {
+        for (int i = 0; i < DAYS; i++) {
+            assertEquals("Error: " + name + " differs from before for day " + i,
+                    legacy.run(mDates[i]), cached.run(mDates[i]));
+        }
+        if (!CHECK_TIMINGS) {
+            return;
+        }
+        // The best of a few alternating rounds, so that a pause in one doesn't decide the result.
+        long cachedNanos = Long.MAX_VALUE;
+        long legacyNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            cachedNanos = Math.min(cachedNanos, time(cached));
+            legacyNanos = Math.min(legacyNanos, time(legacy));
+        }
+        assertTrue(String.format(Locale.US,
+                "Error: %s took %.0f ns per call, against %.0f ns before", name,
+                (double) cachedNanos / ITERATIONS / DAYS, (double) legacyNanos / ITERATIONS / DAYS),
+                cachedNanos < legacyNanos);
+    }
+
+    private long time(Case benchmarked) {
+        int checksum = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            checksum += benchmarked.run(mDates[i % DAYS]).length();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (long date : mDates) {
+                checksum += benchmarked.run(date).length();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        // Keeps the calls from being optimized away.
+        assertTrue(checksum != 0);
+        return nanos;
+    }
+
+    private String legacyFriendlyDayString(long date) {
+        int julianDay = legacyDayIndex(date);
+        if (julianDay == 0) {
+            return String.format("%1$s, %2$s", "Today", legacyMonthDay(date));
+        } else if (julianDay < 7) {
+            return legacyDayName(date);
+        } else {
+            return newFormat("EEE MMM dd").format(date);
+        }
+    }
+
+    private String legacyDayName(long date) {
+        int julianDay = legacyDayIndex(date);
+        if (julianDay == 0) {
+            return "Today";
+        } else if (julianDay == 1) {
+            return "Tomorrow";
+        } else {
+            return newFormat("EEEE").format(date);
+        }
+    }
+
+    private String legacyMonthDay(long date) {
+        // The old helper made a second, unused, format as well.
+        newFormat(Utility.DATE_FORMAT);
+        return newFormat("MMMM dd").format(date);
+    }
+
+    // Days from today, with a new calendar every call as the old helpers had a new Time.
+    private int legacyDayIndex(long date) {
+        Calendar calendar = Calendar.getInstance(mTimeZone, Locale.US);
+        calendar.setTimeInMillis(mNow);
+        int offset = calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET);
+        return (int) ((date + offset) / 86400000L - (mNow + offset) / 86400000L);
+    }
+
+    private SimpleDateFormat newFormat(String pattern) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+        format.setTimeZone(mTimeZone);
+        return format;
+    }
+
+    private interface Case {
+        String run(long date);
+    }
+}
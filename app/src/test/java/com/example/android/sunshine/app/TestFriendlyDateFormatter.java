@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import junit.framework.TestCase;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+public class TestFriendlyDateFormatter extends TestCase {
+
+    static final TimeZone TIME_ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+
+    private FriendlyDateFormatter mFormatter;
+    // Noon on Wednesday, June 8 2016.
+    private long mNow;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFormatter = newFormatter();
+        mNow = dayAt(2016, Calendar.JUNE, 8, 12);
+    }
+
+    static FriendlyDateFormatter newFormatter() {
+        return new FriendlyDateFormatter(Locale.US, TIME_ZONE, "Today", "Tomorrow", "%1$s, %2$s");
+    }
+
+    static long dayAt(int year, int month, int day, int hour) {
+        Calendar calendar = Calendar.getInstance(TIME_ZONE, Locale.US);
+        calendar.clear();
+        calendar.set(year, month, day, hour, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    public void testFriendlyDayString() {
+        long today = dayAt(2016, Calendar.JUNE, 8, 0);
+        assertEquals("Today, June 08", mFormatter.getFriendlyDayString(today, true, mNow));
+        assertEquals("Today", mFormatter.getFriendlyDayString(today, false, mNow));
+        assertEquals("Tomorrow",
+                mFormatter.getFriendlyDayString(dayAt(2016, Calendar.JUNE, 9, 0), true, mNow));
+        assertEquals("Tuesday",
+                mFormatter.getFriendlyDayString(dayAt(2016, Calendar.JUNE, 14, 23), true, mNow));
+        assertEquals("Wed Jun 15",
+                mFormatter.getFriendlyDayString(dayAt(2016, Calendar.JUNE, 15, 0), true, mNow));
+    }
+
+    public void testFullFriendlyDayString() {
+        assertEquals("Tomorrow, June 09",
+                mFormatter.getFullFriendlyDayString(dayAt(2016, Calendar.JUNE, 9, 0), mNow));
+        assertEquals("Friday, June 10",
+                mFormatter.getFullFriendlyDayString(dayAt(2016, Calendar.JUNE, 10, 0), mNow));
+    }
+
+    public void testFormatDate() {
+        assertEquals("Jun 8, 2016", mFormatter.formatDate(mNow));
+    }
+
+    // The same formatter moves on to the next day once midnight has passed.
+    public void testMovesOnAtMidnight() {
+        long tomorrow = dayAt(2016, Calendar.JUNE, 9, 0);
+        assertEquals("Tomorrow", mFormatter.getDayName(tomorrow, mNow));
+        assertEquals("Today", mFormatter.getDayName(tomorrow, tomorrow + 1));
+        assertEquals("Wednesday", mFormatter.getDayName(mNow, tomorrow + 1));
+    }
+
+    // Days are counted by the calendar, so a 23 hour day doesn't shift them.
+    public void testDaylightSavingChange() {
+        // Clocks go forward early on Sunday, March 13 2016.
+        long saturday = dayAt(2016, Calendar.MARCH, 12, 12);
+        assertEquals("Tomorrow",
+                mFormatter.getDayName(dayAt(2016, Calendar.MARCH, 13, 0), saturday));
+        assertEquals("Monday",
+                mFormatter.getDayName(dayAt(2016, Calendar.MARCH, 14, 0), saturday));
+        assertEquals("Fri Mar 18", mFormatter.getFriendlyDayString(
+                dayAt(2016, Calendar.MARCH, 18, 23), false, dayAt(2016, Calendar.MARCH, 11, 23)));
+    }
+}
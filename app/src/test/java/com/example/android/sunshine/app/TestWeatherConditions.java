@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import junit.framework.TestCase;
+
+import java.util.Locale;
+
+/**
+ * Checks the condition tables against the if/else and switch ladders Utility used before them,
+ * for every id OpenWeatherMap could send and a few it couldn't.
+ */
+public class TestWeatherConditions extends TestCase {
+
+    // The default pack, pref_art_pack_sunshine.
+    static final String ART_PACK = "https://raw.githubusercontent.com/udacity/Sunshine-Version-2/"
+            + "sunshine_master/app/src/main/res/drawable-xxhdpi/art_%s.png";
+
+    public void testMatchesLegacy() {
+        for (int id = -1; id <= WeatherConditions.ID_COUNT; id++) {
+            String message = "Error: Condition " + id + " differs from before";
+            assertEquals(message, Legacy.getIconNameForWeatherCondition(id),
+                    WeatherConditions.getIconName(id));
+            assertEquals(message, Legacy.getIconResourceForWeatherCondition(id),
+                    WeatherConditions.getIconResource(id));
+            assertEquals(message, Legacy.getArtResourceForWeatherCondition(id),
+                    WeatherConditions.getArtResource(id));
+            assertEquals(message, Legacy.getArtUrlForWeatherCondition(ART_PACK, id),
+                    WeatherConditions.getArtUrl(ART_PACK, id));
+            assertEquals(message, Legacy.getStringResourceForWeatherCondition(id),
+                    WeatherConditions.getStringResource(id));
+            assertEquals(message, Legacy.getImageUrlForWeatherCondition(id),
+                    WeatherConditions.getImageUrl(id));
+        }
+    }
+
+    // Art urls are made once per pack, not once per call.
+    public void testArtUrlsAreShared() {
+        assertSame(WeatherConditions.getArtUrl(ART_PACK, 800),
+                WeatherConditions.getArtUrl(ART_PACK, 800));
+        assertSame(WeatherConditions.getArtUrl(ART_PACK, 500),
+                WeatherConditions.getArtUrl(ART_PACK, 521));
+        String otherPack = "https://example.com/%s.png";
+        assertEquals("https://example.com/clear.png", WeatherConditions.getArtUrl(otherPack, 800));
+    }
+
+    // Utility's helpers as they were, with the art pack passed in and the condition's string
+    // resource returned rather than looked up.  0 stands for condition_unknown.
+    static final class Legacy {
+
+        static String getIconNameForWeatherCondition(int weatherId) {
+            if (weatherId >= 200 && weatherId <= 232) {
+                return "storm";
+            } else if (weatherId >= 300 && weatherId <= 321) {
+                return "light_rain";
+            } else if (weatherId >= 500 && weatherId <= 504) {
+                return "rain";
+            } else if (weatherId == 511) {
+                return "snow";
+            } else if (weatherId >= 520 && weatherId <= 531) {
+                return "rain";
+            } else if (weatherId >= 600 && weatherId <= 622) {
+                return "snow";
+            } else if (weatherId >= 701 && weatherId <= 761) {
+                return "fog";
+            } else if (weatherId == 761 || weatherId == 781) {
+                return "storm";
+            } else if (weatherId == 800) {
+                return "clear";
+            } else if (weatherId == 801) {
+                return "light_clouds";
+            } else if (weatherId >= 802 && weatherId <= 804) {
+                return "clouds";
+            }
+            return "";
+        }
+
+        static int getIconResourceForWeatherCondition(int weatherId) {
+            // Based on weather code data found at:
+            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+            if (weatherId >= 200 && weatherId <= 232) {
+                return R.drawable.ic_storm;
+            } else if (weatherId >= 300 && weatherId <= 321) {
+                return R.drawable.ic_light_rain;
+            } else if (weatherId >= 500 && weatherId <= 504) {
+                return R.drawable.ic_rain;
+            } else if (weatherId == 511) {
+                return R.drawable.ic_snow;
+            } else if (weatherId >= 520 && weatherId <= 531) {
+                return R.drawable.ic_rain;
+            } else if (weatherId >= 600 && weatherId <= 622) {
+                return R.drawable.ic_snow;
+            } else if (weatherId >= 701 && weatherId <= 761) {
+                return R.drawable.ic_fog;
+            } else if (weatherId == 761 || weatherId == 781) {
+                return R.drawable.ic_storm;
+            } else if (weatherId == 800) {
+                return R.drawable.ic_clear;
+            } else if (weatherId == 801) {
+                return R.drawable.ic_light_clouds;
+            } else if (weatherId >= 802 && weatherId <= 804) {
+                return R.drawable.ic_cloudy;
+            }
+            return -1;
+        }
+
+        static String getArtUrlForWeatherCondition(String formatArtUrl, int weatherId) {
+            // Based on weather code data found at:
+            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+            if (weatherId >= 200 && weatherId <= 232) {
+                return String.format(Locale.US, formatArtUrl, "storm");
+            } else if (weatherId >= 300 && weatherId <= 321) {
+                return String.format(Locale.US, formatArtUrl, "light_rain");
+            } else if (weatherId >= 500 && weatherId <= 504) {
+                return String.format(Locale.US, formatArtUrl, "rain");
+            } else if (weatherId == 511) {
+                return String.format(Locale.US, formatArtUrl, "snow");
+            } else if (weatherId >= 520 && weatherId <= 531) {
+                return String.format(Locale.US, formatArtUrl, "rain");
+            } else if (weatherId >= 600 && weatherId <= 622) {
+                return String.format(Locale.US, formatArtUrl, "snow");
+            } else if (weatherId >= 701 && weatherId <= 761) {
+                return String.format(Locale.US, formatArtUrl, "fog");
+            } else if (weatherId == 761 || weatherId == 781) {
+                return String.format(Locale.US, formatArtUrl, "storm");
+            } else if (weatherId == 800) {
+                return String.format(Locale.US, formatArtUrl, "clear");
+            } else if (weatherId == 801) {
+                return String.format(Locale.US, formatArtUrl, "light_clouds");
+            } else if (weatherId >= 802 && weatherId <= 804) {
+                return String.format(Locale.US, formatArtUrl, "clouds");
+            }
+            return null;
+        }
+
+        static int getArtResourceForWeatherCondition(int weatherId) {
+            // Based on weather code data found at:
+            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+            if (weatherId >= 200 && weatherId <= 232) {
+                return R.drawable.art_storm;
+            } else if (weatherId >= 300 && weatherId <= 321) {
+                return R.drawable.art_light_rain;
+            } else if (weatherId >= 500 && weatherId <= 504) {
+                return R.drawable.art_rain;
+            } else if (weatherId == 511) {
+                return R.drawable.art_snow;
+            } else if (weatherId >= 520 && weatherId <= 531) {
+                return R.drawable.art_rain;
+            } else if (weatherId >= 600 && weatherId <= 622) {
+                return R.drawable.art_snow;
+            } else if (weatherId >= 701 && weatherId <= 761) {
+                return R.drawable.art_fog;
+            } else if (weatherId == 761 || weatherId == 781) {
+                return R.drawable.art_storm;
+            } else if (weatherId == 800) {
+                return R.drawable.art_clear;
+            } else if (weatherId == 801) {
+                return R.drawable.art_light_clouds;
+            } else if (weatherId >= 802 && weatherId <= 804) {
+                return R.drawable.art_clouds;
+            }
+            return -1;
+        }
+
+        static int getStringResourceForWeatherCondition(int weatherId) {
+            // Based on weather code data found at:
+            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+            int stringId;
+            if (weatherId >= 200 && weatherId <= 232) {
+                stringId = R.string.condition_2xx;
+            } else if (weatherId >= 300 && weatherId <= 321) {
+                stringId = R.string.condition_3xx;
+            } else switch (weatherId) {
+                case 500:
+                    stringId = R.string.condition_500;
+                    break;
+                case 501:
+                    stringId = R.string.condition_501;
+                    break;
+                case 502:
+                    stringId = R.string.condition_502;
+                    break;
+                case 503:
+                    stringId = R.string.condition_503;
+                    break;
+                case 504:
+                    stringId = R.string.condition_504;
+                    break;
+                case 511:
+                    stringId = R.string.condition_511;
+                    break;
+                case 520:
+                    stringId = R.string.condition_520;
+                    break;
+                case 531:
+                    stringId = R.string.condition_531;
+                    break;
+                case 600:
+                    stringId = R.string.condition_600;
+                    break;
+                case 601:
+                    stringId = R.string.condition_601;
+                    break;
+                case 602:
+                    stringId = R.string.condition_602;
+                    break;
+                case 611:
+                    stringId = R.string.condition_611;
+                    break;
+                case 612:
+                    stringId = R.string.condition_612;
+                    break;
+                case 615:
+                    stringId = R.string.condition_615;
+                    break;
+                case 616:
+                    stringId = R.string.condition_616;
+                    break;
+                case 620:
+                    stringId = R.string.condition_620;
+                    break;
+                case 621:
+                    stringId = R.string.condition_621;
+                    break;
+                case 622:
+                    stringId = R.string.condition_622;
+                    break;
+                case 701:
+                    stringId = R.string.condition_701;
+                    break;
+                case 711:
+                    stringId = R.string.condition_711;
+                    break;
+                case 721:
+                    stringId = R.string.condition_721;
+                    break;
+                case 731:
+                    stringId = R.string.condition_731;
+                    break;
+                case 741:
+                    stringId = R.string.condition_741;
+                    break;
+                case 751:
+                    stringId = R.string.condition_751;
+                    break;
+                case 761:
+                    stringId = R.string.condition_761;
+                    break;
+                case 762:
+                    stringId = R.string.condition_762;
+                    break;
+                case 771:
+                    stringId = R.string.condition_771;
+                    break;
+                case 781:
+                    stringId = R.string.condition_781;
+                    break;
+                case 800:
+                    stringId = R.string.condition_800;
+                    break;
+                case 801:
+                    stringId = R.string.condition_801;
+                    break;
+                case 802:
+                    stringId = R.string.condition_802;
+                    break;
+                case 803:
+                    stringId = R.string.condition_803;
+                    break;
+                case 804:
+                    stringId = R.string.condition_804;
+                    break;
+                case 900:
+                    stringId = R.string.condition_900;
+                    break;
+                case 901:
+                    stringId = R.string.condition_901;
+                    break;
+                case 902:
+                    stringId = R.string.condition_902;
+                    break;
+                case 903:
+                    stringId = R.string.condition_903;
+                    break;
+                case 904:
+                    stringId = R.string.condition_904;
+                    break;
+                case 905:
+                    stringId = R.string.condition_905;
+                    break;
+                case 906:
+                    stringId = R.string.condition_906;
+                    break;
+                case 951:
+                    stringId = R.string.condition_951;
+                    break;
+                case 952:
+                    stringId = R.string.condition_952;
+                    break;
+                case 953:
+                    stringId = R.string.condition_953;
+                    break;
+                case 954:
+                    stringId = R.string.condition_954;
+                    break;
+                case 955:
+                    stringId = R.string.condition_955;
+                    break;
+                case 956:
+                    stringId = R.string.condition_956;
+                    break;
+                case 957:
+                    stringId = R.string.condition_957;
+                    break;
+                case 958:
+                    stringId = R.string.condition_958;
+                    break;
+                case 959:
+                    stringId = R.string.condition_959;
+                    break;
+                case 960:
+                    stringId = R.string.condition_960;
+                    break;
+                case 961:
+                    stringId = R.string.condition_961;
+                    break;
+                case 962:
+                    stringId = R.string.condition_962;
+                    break;
+                default:
+                    return 0;
+            }
+            return stringId;
+        }
+
+        static String getImageUrlForWeatherCondition(int weatherId) {
+            // Based on weather code data found at:
+            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+            if (weatherId >= 200 && weatherId <= 232) {
+                return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
+            } else if (weatherId >= 300 && weatherId <= 321) {
+                return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
+            } else if (weatherId >= 500 && weatherId <= 504) {
+                return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+            } else if (weatherId == 511) {
+                return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+            } else if (weatherId >= 520 && weatherId <= 531) {
+                return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+            } else if (weatherId >= 600 && weatherId <= 622) {
+                return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+            } else if (weatherId >= 701 && weatherId <= 761) {
+                return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
+            } else if (weatherId == 761 || weatherId == 781) {
+                return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+            } else if (weatherId == 800) {
+                return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
+            } else if (weatherId == 801) {
+                return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
+            } else if (weatherId >= 802 && weatherId <= 804) {
+                return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import junit.framework.TestCase;
+
+import java.util.Locale;
+
+/**
+ * Each condition lookup through {@link WeatherConditions} against the ladder it replaced, over
+ * the ids a fortnight's forecast might bring.  Both have to give the same answer.  Run with
+ * {@code -Pbenchmark}, a table lookup also may not be markedly slower than the ladder; a loaded
+ * machine makes that too noisy to check on every build.
+ */
+public class TestWeatherConditionsBenchmark extends TestCase {
+
+    private static final int WARM_UP = 20000;
+    private static final int ITERATIONS = 200000;
+    private static final int ROUNDS = 5;
+    private static final boolean CHECK_TIMINGS = Boolean.getBoolean("benchmark");
+    // The tables should be at least as quick as the ladder; the slack is for timing noise.
+    private static final int MAX_SLOWDOWN = 2;
+    private static final int[] IDS = {
+            800, 801, 802, 500, 501, 211, 300, 600, 701, 804, 803, 502, 781, 962
+    };
+
+    private interface Lookup {
+        int run(int weatherId);
+    }
+
+    public void testIconResource() {
+        compare("getIconResource", new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return WeatherConditions.getIconResource(weatherId);
+            }
+        }, new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return TestWeatherConditions.Legacy.getIconResourceForWeatherCondition(weatherId);
+            }
+        });
+    }
+
+    public void testArtResource() {
+        compare("getArtResource", new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return WeatherConditions.getArtResource(weatherId);
+            }
+        }, new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return TestWeatherConditions.Legacy.getArtResourceForWeatherCondition(weatherId);
+            }
+        });
+    }
+
+    public void testIconName() {
+        compare("getIconName", new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return WeatherConditions.getIconName(weatherId).length();
+            }
+        }, new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return TestWeatherConditions.Legacy.getIconNameForWeatherCondition(weatherId)
+                        .length();
+            }
+        });
+    }
+
+    public void testArtUrl() {
+        compare("getArtUrl", new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                String url = WeatherConditions.getArtUrl(TestWeatherConditions.ART_PACK,
+                        weatherId);
+                return url == null ? 0 : url.length();
+            }
+        }, new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                String url = TestWeatherConditions.Legacy.getArtUrlForWeatherCondition(
+                        TestWeatherConditions.ART_PACK, weatherId);
+                return url == null ? 0 : url.length();
+            }
+        });
+    }
+
+    public void testImageUrl() {
+        compare("getImageUrl", new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                String url = WeatherConditions.getImageUrl(weatherId);
+                return url == null ? 0 : url.length();
+            }
+        }, new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                String url = TestWeatherConditions.Legacy.getImageUrlForWeatherCondition(weatherId);
+                return url == null ? 0 : url.length();
+            }
+        });
+    }
+
+    public void testStringResource() {
+        compare("getStringResource", new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return WeatherConditions.getStringResource(weatherId);
+            }
+        }, new Lookup() {
+            @Override
+            public int run(int weatherId) {
+                return TestWeatherConditions.Legacy.getStringResourceForWeatherCondition(
+                        weatherId);
+            }
+        });
+    }
+
+    private static void compare(String name, Lookup table, Lookup legacy) {
+        for (int id : IDS) {
+            assertEquals("Error: " + name + " differs from the ladder for " + id,
+                    legacy.run(id), table.run(id));
+        }
+        if (!CHECK_TIMINGS) {
+            return;
+        }
+        // The best of a few alternating rounds, so that a pause in one doesn't decide the result.
+        long tableNanos = Long.MAX_VALUE;
+        long legacyNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            tableNanos = Math.min(tableNanos, time(table));
+            legacyNanos = Math.min(legacyNanos, time(legacy));
+        }
+        int calls = ITERATIONS * IDS.length;
+        assertTrue(String.format(Locale.US,
+                "Error: %s took %.1f ns per call, against %.1f ns for the ladder", name,
+                (double) tableNanos / calls, (double) legacyNanos / calls),
+                tableNanos <= legacyNanos * MAX_SLOWDOWN);
+    }
+
+    private static long time(Lookup lookup) {
+        long checksum = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            checksum += lookup.run(IDS[i % IDS.length]);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int id : IDS) {
+                checksum += lookup.run(id);
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        // Keeps the calls from being optimized away.
+        assertTrue(checksum != 0);
+        return nanos;
+    }
+}
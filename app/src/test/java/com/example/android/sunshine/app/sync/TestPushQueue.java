@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The queueing and retry rules of the watch publisher, run against a fake sender and a
+ * scheduler that only runs tasks when told to.
+ */
+public class TestPushQueue extends TestCase {
+
+    private FakeSender mSender;
+    private FakeScheduler mScheduler;
+    private PushQueue<String> mQueue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSender = new FakeSender();
+        mScheduler = new FakeScheduler();
+        mQueue = new PushQueue<String>(mSender, mScheduler);
+    }
+
+    public void testSendsInOrder() {
+        final int[] sentCallbacks = new int[1];
+        Runnable onSent = new Runnable() {
+            @Override
+            public void run() {
+                sentCallbacks[0]++;
+            }
+        };
+        mQueue.publish("/weather", "weather", onSent);
+        mQueue.publish("/config", "config", onSent);
+        assertEquals("Error: One drain should be queued for both pushes",
+                1, mScheduler.mTasks.size());
+
+        mScheduler.runNext();
+        assertEquals(list("weather", "config"), mSender.mSent);
+        assertEquals(2, sentCallbacks[0]);
+        assertEquals(2, mQueue.getSentCount());
+        assertEquals(1, mSender.mIdleCount);
+    }
+
+    public void testCoalescesPerPath() {
+        mQueue.publish("/weather", "old", null);
+        mQueue.publish("/weather", "new", null);
+
+        mScheduler.runNext();
+        assertEquals(list("new"), mSender.mSent);
+        assertEquals(1, mQueue.getCoalescedCount());
+        assertEquals(0, mQueue.getDroppedCount());
+    }
+
+    public void testEvictsOldestPathWhenFull() {
+        for (int i = 0; i <= PushQueue.MAX_PENDING; i++) {
+            mQueue.publish("/path" + i, "item" + i, null);
+        }
+
+        mScheduler.runNext();
+        assertEquals(PushQueue.MAX_PENDING, mSender.mSent.size());
+        assertFalse("Error: Oldest path should have been evicted",
+                mSender.mSent.contains("item0"));
+        assertEquals("item" + PushQueue.MAX_PENDING,
+                mSender.mSent.get(PushQueue.MAX_PENDING - 1));
+        assertEquals(1, mQueue.getDroppedCount());
+    }
+
+    public void testBacksOffAfterFailures() {
+        mSender.mResults.add(PushQueue.SEND_FAILED);
+        mSender.mResults.add(PushQueue.SEND_FAILED);
+        mSender.mResults.add(PushQueue.SEND_FAILED);
+        mQueue.publish("/weather", "weather", null);
+
+        mScheduler.runNext();
+        assertEquals(PushQueue.INITIAL_BACKOFF_MILLIS, mScheduler.nextDelay());
+        mScheduler.runNext();
+        assertEquals(PushQueue.INITIAL_BACKOFF_MILLIS * 2, mScheduler.nextDelay());
+        mScheduler.runNext();
+        assertEquals(PushQueue.INITIAL_BACKOFF_MILLIS * 4, mScheduler.nextDelay());
+
+        mScheduler.runNext();
+        assertEquals(list("weather", "weather", "weather", "weather"), mSender.mAttempted);
+        assertEquals(list("weather"), mSender.mSent);
+        assertEquals(3, mQueue.getFailureCount());
+        assertTrue(mScheduler.mTasks.isEmpty());
+    }
+
+    public void testBackoffIsCapped() {
+        assertEquals(PushQueue.INITIAL_BACKOFF_MILLIS, PushQueue.backoffMillis(1));
+        assertEquals(PushQueue.MAX_BACKOFF_MILLIS, PushQueue.backoffMillis(20));
+        assertEquals(PushQueue.MAX_BACKOFF_MILLIS, PushQueue.backoffMillis(Integer.MAX_VALUE));
+    }
+
+    public void testGivesUpAfterMaxAttempts() {
+        mSender.mAlways = PushQueue.SEND_FAILED;
+        mQueue.publish("/weather", "weather", null);
+
+        for (int i = 0; i < PushQueue.MAX_ATTEMPTS; i++) {
+            assertFalse("Error: Gave up after " + i + " attempts", mScheduler.mTasks.isEmpty());
+            mScheduler.runNext();
+        }
+        assertTrue("Error: Push retried past the limit", mScheduler.mTasks.isEmpty());
+        assertEquals(PushQueue.MAX_ATTEMPTS, mSender.mAttempted.size());
+        assertEquals(1, mQueue.getDroppedCount());
+
+        // The queue starts over with the next push.
+        mSender.mAlways = PushQueue.SEND_OK;
+        mQueue.publish("/weather", "newer", null);
+        mScheduler.runNext();
+        assertEquals(list("newer"), mSender.mSent);
+    }
+
+    public void testNewerPushReplacesOneAwaitingRetry() {
+        mSender.mResults.add(PushQueue.SEND_FAILED);
+        mQueue.publish("/weather", "old", null);
+        mScheduler.runNext();
+
+        mQueue.publish("/weather", "new", null);
+        assertEquals("Error: The scheduled retry should send the newer push",
+                1, mScheduler.mTasks.size());
+        mScheduler.runNext();
+        assertEquals(list("new"), mSender.mSent);
+        assertEquals(1, mQueue.getCoalescedCount());
+    }
+
+    public void testDropsEverythingWithoutApi() {
+        mSender.mResults.add(PushQueue.SEND_API_UNAVAILABLE);
+        mQueue.publish("/weather", "weather", null);
+        mQueue.publish("/config", "config", null);
+
+        mScheduler.runNext();
+        assertEquals(list("weather"), mSender.mAttempted);
+        assertEquals(2, mQueue.getDroppedCount());
+        assertTrue("Error: Nothing should be retried without the API",
+                mScheduler.mTasks.isEmpty());
+
+        // The API may have been installed since.
+        mQueue.publish("/weather", "later", null);
+        mScheduler.runNext();
+        assertEquals(list("later"), mSender.mSent);
+    }
+
+    private static List<String> list(String... items) {
+        List<String> list = new ArrayList<String>();
+        for (String item : items) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    private static final class FakeSender implements PushQueue.Sender<String> {
+        // Results to return, in order, before falling back to mAlways.
+        final LinkedList<Integer> mResults = new LinkedList<Integer>();
+        int mAlways = PushQueue.SEND_OK;
+        final List<String> mAttempted = new ArrayList<String>();
+        final List<String> mSent = new ArrayList<String>();
+        int mIdleCount;
+
+        @Override
+        public int send(String item) {
+            mAttempted.add(item);
+            int result = mResults.isEmpty() ? mAlways : mResults.removeFirst();
+            if (result == PushQueue.SEND_OK) {
+                mSent.add(item);
+            }
+            return result;
+        }
+
+        @Override
+        public void idle() {
+            mIdleCount++;
+        }
+    }
+
+    private static final class FakeScheduler implements PushQueue.Scheduler {
+        final LinkedList<Runnable> mTasks = new LinkedList<Runnable>();
+        final LinkedList<Long> mDelays = new LinkedList<Long>();
+
+        @Override
+        public void execute(Runnable task) {
+            schedule(task, 0);
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            mTasks.add(task);
+            mDelays.add(delayMillis);
+        }
+
+        long nextDelay() {
+            return mDelays.getFirst();
+        }
+
+        void runNext() {
+            mDelays.removeFirst();
+            mTasks.removeFirst().run();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import junit.framework.TestCase;
+
+/**
+ * The content hash that keeps an unchanged forecast from being sent to the watch again.
+ */
+public class TestWatchForecast extends TestCase {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long TODAY = 1465344000000L;
+
+    private static WatchForecast newForecast(boolean metric, float todayHigh, String todayIcon) {
+        return new WatchForecast(metric,
+                new long[]{TODAY, TODAY + DAY},
+                new float[]{todayHigh, 21.5f},
+                new float[]{11f, 12.5f},
+                new String[]{todayIcon, "rain"});
+    }
+
+    public void testSameForecastSameHash() {
+        assertEquals(newForecast(true, 20f, "clear").contentHash(),
+                newForecast(true, 20f, "clear").contentHash());
+    }
+
+    public void testChangesChangeHash() {
+        long hash = newForecast(true, 20f, "clear").contentHash();
+        assertFalse("Error: The units should change the hash",
+                hash == newForecast(false, 20f, "clear").contentHash());
+        assertFalse("Error: A temperature should change the hash",
+                hash == newForecast(true, 20.5f, "clear").contentHash());
+        assertFalse("Error: An icon should change the hash",
+                hash == newForecast(true, 20f, "clouds").contentHash());
+    }
+}
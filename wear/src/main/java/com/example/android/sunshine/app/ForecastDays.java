@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The days of forecast the phone last sent, from its day on. Each date is the start of its day,
+ * so the face shows whichever day has begun most recently and moves on at midnight by itself,
+ * until the last day is over.
+ */
+final class ForecastDays {
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    static final ForecastDays EMPTY =
+            new ForecastDays(0, false, new long[0], new float[0], new float[0], new String[0]);
+
+    // The phone's hash of the content, the same for the same forecast.
+    final long hash;
+    final boolean metric;
+    final long[] dates;
+    // In Celsius.
+    final float[] highs;
+    final float[] lows;
+    final String[] icons;
+
+    ForecastDays(long hash, boolean metric, long[] dates, float[] highs, float[] lows,
+                 String[] icons) {
+        this.hash = hash;
+        this.metric = metric;
+        this.dates = dates;
+        this.highs = highs;
+        this.lows = lows;
+        this.icons = icons;
+    }
+
+    /**
+     * @return the day to show at {@code now}, the first day if none has begun yet, or -1 if
+     * there are no days or the last one has ended
+     */
+    int indexOfDay(long now) {
+        if (dates.length == 0 || now >= dates[dates.length - 1] + DAY_MILLIS) {
+            return -1;
+        }
+        int day = 0;
+        for (int i = 1; i < dates.length && dates[i] <= now; i++) {
+            day = i;
+        }
+        return day;
+    }
+
+    /**
+     * Formats a temperature in the units the phone uses.
+     *
+     * @param format the format of a whole number of degrees
+     */
+    String formatTemperature(String format, float celsius) {
+        double temperature = metric ? celsius : celsius * 1.8 + 32;
+        return String.format(format, temperature);
+    }
+}
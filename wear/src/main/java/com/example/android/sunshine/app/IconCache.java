@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Weather icons decoded once, at the size the face draws them, for each icon name, screen shape
+ * and ambient mode. The phone keeps sending the same few icons, so most pushes are answered from
+ * memory. Decoding reads from resources, so call {@link #get} off the UI thread.
+ */
+class IconCache {
+    private static final String LOG_TAG = IconCache.class.getSimpleName();
+
+    // Every icon and its ambient twin, by the names the phone sends.
+    private static final String[] NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+    private static final int[] ICONS = {
+            R.drawable.storm, R.drawable.light_rain, R.drawable.rain, R.drawable.snow,
+            R.drawable.fog, R.drawable.clear, R.drawable.light_clouds, R.drawable.clouds
+    };
+    private static final int[] AMBIENT_ICONS = {
+            R.drawable.storm_ambient, R.drawable.light_rain_ambient, R.drawable.rain_ambient,
+            R.drawable.snow_ambient, R.drawable.fog_ambient, R.drawable.clear_ambient,
+            R.drawable.light_clouds_ambient, R.drawable.clouds_ambient
+    };
+    // Room for every icon of one screen shape, both ambient and not.
+    private static final int MAX_BYTES = 1024 * 1024;
+
+    private final Resources mResources;
+    private final LruCache<Integer, Bitmap> mIcons;
+    // An evicted or intermediate bitmap the next decode may write its pixels into.
+    private Bitmap mReusable;
+
+    IconCache(Resources resources) {
+        mResources = resources;
+        mIcons = new LruCache<Integer, Bitmap>(MAX_BYTES) {
+            @Override
+            protected int sizeOf(Integer key, Bitmap icon) {
+                return icon.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldIcon,
+                                        Bitmap newIcon) {
+                // Only the least recently used icons are evicted, never the ones being drawn.
+                if (evicted && oldIcon.isMutable()) {
+                    mReusable = oldIcon;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the icon sized for the screen, or null if there is no icon of that name
+     */
+    synchronized Bitmap get(String iconName, boolean round, boolean ambient) {
+        int index = indexOf(iconName);
+        if (index == -1) {
+            return null;
+        }
+        Integer key = (index << 2) | (round ? 2 : 0) | (ambient ? 1 : 0);
+        Bitmap icon = mIcons.get(key);
+        if (icon == null) {
+            icon = decode(ambient ? AMBIENT_ICONS[index] : ICONS[index], round);
+            if (icon != null) {
+                mIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    private static int indexOf(String iconName) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(iconName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Bitmap decode(int resourceId, boolean round) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        options.inScaled = false;
+        BitmapFactory.decodeResource(mResources, resourceId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Icons for round screens must be smaller. Otherwise they're scaled from the density
+        // they were drawn for, as decodeResource would.
+        int width;
+        int height;
+        if (round) {
+            width = mResources.getInteger(R.integer.width_icon_round);
+            height = mResources.getInteger(R.integer.height_icon_round);
+        } else if (options.inDensity == 0) {
+            width = options.outWidth;
+            height = options.outHeight;
+        } else {
+            int density = mResources.getDisplayMetrics().densityDpi;
+            width = Math.round((float) options.outWidth * density / options.inDensity);
+            height = Math.round((float) options.outHeight * density / options.inDensity);
+        }
+
+        // Skip whole multiples of pixels the screen won't show while decoding.
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inBitmap = mReusable;
+        mReusable = null;
+
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeResource(mResources, resourceId, options);
+        } catch (IllegalArgumentException e) {
+            // The bitmap offered for reuse was too small.
+            options.inBitmap = null;
+            decoded = BitmapFactory.decodeResource(mResources, resourceId, options);
+        }
+        if (decoded == null) {
+            Log.d(LOG_TAG, "Could not decode icon " + resourceId);
+            return null;
+        }
+        if (decoded.getWidth() == width && decoded.getHeight() == height) {
+            return decoded;
+        }
+        Bitmap icon = Bitmap.createScaledBitmap(decoded, width, height, true);
+        mReusable = decoded;
+        return icon;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The face's time, "H:mm", kept in a buffer that is only rewritten when the minute changes.
+ * Frames within the same minute allocate nothing and leave the calendar alone.
+ */
+final class TimeText {
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    // Long enough for "23:59".
+    final char[] chars = new char[5];
+    int length;
+    // The number of chars before the colon.
+    int hoursLength;
+
+    private final Calendar mCalendar;
+    private long mMinute = Long.MIN_VALUE;
+
+    TimeText(TimeZone timeZone) {
+        mCalendar = Calendar.getInstance(timeZone);
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        // Have the next update rewrite the time, even within the same minute.
+        mMinute = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return whether {@link #update} would change the text at {@code now}
+     */
+    boolean changesAt(long now) {
+        return now / MINUTE_MS != mMinute;
+    }
+
+    /**
+     * Brings the time up to {@code now}.
+     *
+     * @return whether the text changed
+     */
+    boolean update(long now) {
+        if (!changesAt(now)) {
+            return false;
+        }
+        mMinute = now / MINUTE_MS;
+        mCalendar.setTimeInMillis(now);
+        int hours = mCalendar.get(Calendar.HOUR_OF_DAY);
+        int minutes = mCalendar.get(Calendar.MINUTE);
+
+        int i = 0;
+        if (hours >= 10) {
+            chars[i++] = (char) ('0' + hours / 10);
+        }
+        chars[i++] = (char) ('0' + hours % 10);
+        hoursLength = i;
+        chars[i++] = ':';
+        chars[i++] = (char) ('0' + minutes / 10);
+        chars[i++] = (char) ('0' + minutes % 10);
+        length = i;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
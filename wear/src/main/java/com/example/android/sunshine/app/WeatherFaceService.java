@@ -22,11 +22,12 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -45,6 +46,7 @@ import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.PutDataMapRequest;
@@ -52,7 +54,6 @@ import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
-import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -104,13 +105,17 @@ public class WeatherFaceService extends CanvasWatchFaceService {
             GoogleApiClient.OnConnectionFailedListener,
             DataApi.DataListener {
 
-        public static final String LOW = "low";
-        public static final String ICON = "icon";
-        public static final String HIGH = "high";
+        // The phone's forecast DataMap, and the version of it this face understands.
+        public static final int VERSION = 2;
+        public static final String KEY_VERSION = "version";
+        public static final String KEY_HASH = "hash";
+        public static final String KEY_METRIC = "metric";
+        public static final String KEY_DATES = "dates";
+        public static final String KEY_HIGHS = "highs";
+        public static final String KEY_LOWS = "lows";
+        public static final String KEY_ICONS = "icons";
         public static final String SUNSHINE_REQUEST = "/weather-request";
         public static final String SUNSHINE_DATA = "/weather-data";
-        public static final String AMBIENT = "_ambient";
-        public static final String DRAWABLE = "drawable";
         public static final float COLUMN_HEIGHT = 0.52f;
         private static final String UID = "uuid";
         private static final float HUNDRED = 100.00f;
@@ -129,6 +134,8 @@ public class WeatherFaceService extends CanvasWatchFaceService {
         Paint mShadePaint;
         Bitmap mIcon;
         Bitmap mIconAmbient;
+        IconCache mIconCache;
+        String mIconName;
         //time text
         float mXTime;
         float mYTime;
@@ -144,17 +151,27 @@ public class WeatherFaceService extends CanvasWatchFaceService {
         Paint mTemperatureAmbient;
         //low temperature text
         String mLow = "";
+        String mTemperatureFormat;
+        //the forecast and the day of it shown
+        ForecastDays mForecast = ForecastDays.EMPTY;
+        int mDay = -1;
         float mXLow;
         float mYLow;
         Paint mLowPaint;
+        //what doesn't change from frame to frame: the background, icon and temperatures
+        Bitmap mLayer;
+        Canvas mLayerCanvas;
+        boolean mLayerDirty = true;
         //time
-        boolean firstHalfSecond;
-        Calendar mCalendar;
+        TimeText mTimeText;
+        // Measured with mTimePaint, when the time or the text size changes.
+        float mHoursWidth;
+        float mColonWidth;
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mTimeText.setTimeZone(TimeZone.getDefault());
                 invalidate();
             }
         };
@@ -200,7 +217,10 @@ public class WeatherFaceService extends CanvasWatchFaceService {
             mLowPaint = createPaint(R.color.low_color, context, true);
             mShadePaint = createPaint(R.color.shade, context, false);
 
-            mCalendar = Calendar.getInstance();
+            mIconCache = new IconCache(getResources());
+            mTemperatureFormat = getString(R.string.format_temperature);
+
+            mTimeText = new TimeText(TimeZone.getDefault());
         }
 
         @Override
@@ -226,7 +246,7 @@ public class WeatherFaceService extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mTimeText.setTimeZone(TimeZone.getDefault());
                 invalidate();
             } else {
                 unregisterReceiver();
@@ -273,7 +293,11 @@ public class WeatherFaceService extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            // Ticks come about once a minute in ambient mode, but not only at the change of the
+            // minute. Redraw only when the time shown or the layer would differ.
+            if (mLayerDirty || mTimeText.changesAt(System.currentTimeMillis())) {
+                invalidate();
+            }
         }
 
         @Override
@@ -281,6 +305,7 @@ public class WeatherFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
+                mLayerDirty = true;
                 invalidate();
             }
 
@@ -293,46 +318,65 @@ public class WeatherFaceService extends CanvasWatchFaceService {
         public void onSurfaceChanged(
                 SurfaceHolder holder, int format, int width, int height) {
             calculateElementsCoordinates(width);
+            if (mLayer == null || mLayer.getWidth() != width || mLayer.getHeight() != height) {
+                mLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mLayerCanvas = new Canvas(mLayer);
+            }
+            mLayerDirty = true;
             super.onSurfaceChanged(holder, format, width, height);
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
+            // Runs for every frame, so nothing here may allocate but once a minute.
+            long now = System.currentTimeMillis();
+            if (mTimeText.update(now)) {
+                measureTime();
+                showDay(now, false);
+            }
 
-            //draw canvas
-            canvas.drawPaint(mAmbient ? mBackgroundPaintAmbient : mBackgroundPaint);
-
-            //draw icon
-            if (mIcon != null) {
-                canvas.drawBitmap(mAmbient ? mIconAmbient : mIcon, mXIcon, mYIcon, null);
+            //draw background, icon and temperatures
+            if (mLayer == null) {
+                drawLayer(canvas);
+            } else {
+                if (mLayerDirty) {
+                    drawLayer(mLayerCanvas);
+                    mLayerDirty = false;
+                }
+                canvas.drawBitmap(mLayer, 0, 0, null);
             }
 
             //draw time
-            int hr = mCalendar.get(Calendar.HOUR_OF_DAY);
-            int min = mCalendar.get(Calendar.MINUTE);
-            String time = String.format("%d:%02d", hr, min);
-            canvas.drawText(time, mXTime, mYTime, mAmbient ? mTimeAmbient : mTimePaint);
-            canvas.drawText(time, mXTime, mYTime, mAmbient ? mTimeAmbient : mTimePaint);
-            canvas.drawText(time, mXTime, mYTime, mAmbient ? mTimeAmbient : mTimePaint);
-
-            //blinking column
-            firstHalfSecond ^= true;//flip
+            canvas.drawText(mTimeText.chars, 0, mTimeText.length, mXTime, mYTime,
+                    mAmbient ? mTimeAmbient : mTimePaint);
+
+            //blinking column, hidden for the first half of every second
+            boolean firstHalfSecond = now % 1000 < INTERACTIVE_UPDATE_RATE_MS;
             if (!isInAmbientMode() && firstHalfSecond) {
-                float hoursWidth = mTimePaint.measureText(String.format("%d", hr));
-                float columnWidth = mTimePaint.measureText(":");
-                float left = mXTime + hoursWidth;
-                float right = left + columnWidth;
+                float left = mXTime + mHoursWidth;
+                float right = left + mColonWidth;
                 float top = mYTime - mTimeTextSize * COLUMN_HEIGHT;
                 canvas.drawRect(left, top, right, mYTime + 1, mBackgroundPaint);
             }
+        }
+
+        private void drawLayer(Canvas canvas) {
+            //draw canvas
+            canvas.drawPaint(mAmbient ? mBackgroundPaintAmbient : mBackgroundPaint);
+
+            //draw icon
+            if (mIcon != null) {
+                canvas.drawBitmap(mAmbient ? mIconAmbient : mIcon, mXIcon, mYIcon, null);
+            }
 
             //draw temperature
             canvas.drawText(mHigh, mXHigh, mYHigh, mAmbient ? mTemperatureAmbient : mHighPaint);
             canvas.drawText(mLow, mXLow, mYLow, mAmbient ? mTemperatureAmbient : mLowPaint);
+        }
 
-            // set time
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
+        private void measureTime() {
+            mHoursWidth = mTimePaint.measureText(mTimeText.chars, 0, mTimeText.hoursLength);
+            mColonWidth = mTimePaint.measureText(mTimeText.chars, mTimeText.hoursLength, 1);
         }
 
         private void calculateElementsCoordinates(int width) {
@@ -367,6 +411,7 @@ public class WeatherFaceService extends CanvasWatchFaceService {
             mHighPaint.setTextSize(mTemperatureTextSize);
             mTimeAmbient.setTextSize(mTimeTextSize);
             mTemperatureAmbient.setTextSize(mTemperatureTextSize);
+            measureTime();
         }
 
         private float scale(int elementId, Resources res, float width) {
@@ -409,6 +454,7 @@ public class WeatherFaceService extends CanvasWatchFaceService {
         @Override
         public void onConnected(Bundle connectionHint) {
             Wearable.DataApi.addListener(mClient, this);
+            readForecast();
             askForWeatherData();
         }
 
@@ -453,33 +499,126 @@ public class WeatherFaceService extends CanvasWatchFaceService {
                     DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
                     String path = item.getUri().getPath();
                     if (path.equals(SUNSHINE_DATA)) {
-                        mHigh = dataMap.getString(HIGH);
-                        mLow = dataMap.getString(LOW);
-                        createIcons(dataMap.getString(ICON));
-                        invalidate();
+                        applyForecast(dataMap);
                     }
                 }
             }
         }
 
-        private void createIcons(String iconName) {
-            try {
-                String ambientIconName = iconName + AMBIENT;
-                Resources res = getResources();
-                int id = res.getIdentifier(iconName, DRAWABLE, getPackageName());
-                int id2 = res.getIdentifier(ambientIconName, DRAWABLE, getPackageName());
-                mIcon = BitmapFactory.decodeResource(res, id);
-                mIconAmbient = BitmapFactory.decodeResource(res, id2);
-                if (mIsRound) {//icons for round circles must be smaller
-                    int width = res.getInteger(R.integer.width_icon_round);
-                    int height = res.getInteger(R.integer.height_icon_round);
-                    mIcon = Bitmap.createScaledBitmap(mIcon, width, height, true);
-                    mIconAmbient = Bitmap.createScaledBitmap(mIconAmbient, width, height, true);
-                }
-            } catch (Exception ex) {
-                mIcon = null;
-                mIconAmbient = null;
+        /**
+         * Shows the forecast the phone last put, which the data layer keeps, without waiting for
+         * the phone to sync.
+         */
+        private void readForecast() {
+            Uri uri = new Uri.Builder()
+                    .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(SUNSHINE_DATA)
+                    .build();
+            Wearable.DataApi.getDataItems(mClient, uri)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            try {
+                                for (DataItem item : dataItems) {
+                                    applyForecast(DataMapItem.fromDataItem(item).getDataMap());
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                        }
+                    });
+        }
+
+        private void applyForecast(DataMap dataMap) {
+            if (dataMap.getInt(KEY_VERSION) != VERSION) {
+                Log.d(LOG_TAG, "Ignoring weather data of version " + dataMap.getInt(KEY_VERSION));
+                return;
+            }
+            long hash = dataMap.getLong(KEY_HASH);
+            if (mForecast != ForecastDays.EMPTY && hash == mForecast.hash) {
+                // The same forecast, read again on connecting.
+                return;
+            }
+            long[] dates = dataMap.getLongArray(KEY_DATES);
+            float[] highs = dataMap.getFloatArray(KEY_HIGHS);
+            float[] lows = dataMap.getFloatArray(KEY_LOWS);
+            String[] icons = dataMap.getStringArray(KEY_ICONS);
+            if (dates == null || highs == null || lows == null || icons == null
+                    || highs.length != dates.length || lows.length != dates.length
+                    || icons.length != dates.length) {
+                Log.d(LOG_TAG, "Ignoring malformed weather data");
+                return;
+            }
+            mForecast = new ForecastDays(hash, dataMap.getBoolean(KEY_METRIC), dates, highs,
+                    lows, icons);
+            showDay(System.currentTimeMillis(), true);
+        }
+
+        // Brings what's shown up to the day at now, touching only what differs from before.
+        private void showDay(long now, boolean forecastChanged) {
+            int day = mForecast.indexOfDay(now);
+            if (day == mDay && !forecastChanged) {
+                return;
+            }
+            mDay = day;
+            if (day == -1) {
+                // Nothing left to show but a forecast for days gone by; wait for the phone.
+                clearDay();
+                return;
+            }
+            String high = mForecast.formatTemperature(mTemperatureFormat, mForecast.highs[day]);
+            String low = mForecast.formatTemperature(mTemperatureFormat, mForecast.lows[day]);
+            if (!high.equals(mHigh) || !low.equals(mLow)) {
+                mHigh = high;
+                mLow = low;
+                mLayerDirty = true;
+                invalidate();
+            }
+            String iconName = mForecast.icons[day];
+            if (!iconName.equals(mIconName)) {
+                mIconName = iconName;
+                loadIcons(iconName);
+            }
+        }
+
+        private void clearDay() {
+            if (mHigh.isEmpty() && mLow.isEmpty() && mIconName == null) {
+                return;
             }
+            mHigh = "";
+            mLow = "";
+            mIconName = null;
+            mIcon = null;
+            mIconAmbient = null;
+            mLayerDirty = true;
+            invalidate();
+        }
+
+        // Gets the icons off the UI thread, and draws them once they're ready. The tasks run one
+        // after another, so the icon drawn is always that of the latest data, and one the face
+        // has since cleared is dropped.
+        private void loadIcons(final String iconName) {
+            final boolean round = mIsRound;
+            new AsyncTask<Void, Void, Bitmap[]>() {
+                @Override
+                protected Bitmap[] doInBackground(Void... params) {
+                    return new Bitmap[]{
+                            mIconCache.get(iconName, round, false),
+                            mIconCache.get(iconName, round, true)
+                    };
+                }
+
+                @Override
+                protected void onPostExecute(Bitmap[] icons) {
+                    if (!iconName.equals(mIconName)) {
+                        return;
+                    }
+                    mIcon = icons[0];
+                    mIconAmbient = icons[1];
+                    mLayerDirty = true;
+                    invalidate();
+                }
+            }.execute();
         }
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import junit.framework.TestCase;
+
+import java.util.Locale;
+
+/**
+ * Picking and formatting the day of the phone's forecast the face shows.
+ */
+public class TestForecastDays extends TestCase {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long TODAY = 1465344000000L;
+    private static final String FORMAT = "%1.0f\u00B0";
+
+    private static ForecastDays newDays(boolean metric) {
+        return new ForecastDays(1, metric,
+                new long[]{TODAY, TODAY + DAY, TODAY + 2 * DAY},
+                new float[]{20f, 21f, 22f},
+                new float[]{10f, 11f, 12f},
+                new String[]{"clear", "clouds", "rain"});
+    }
+
+    public void testIndexOfDay() {
+        ForecastDays days = newDays(true);
+        assertEquals(0, days.indexOfDay(TODAY - 1));
+        assertEquals(0, days.indexOfDay(TODAY + DAY / 2));
+        assertEquals(1, days.indexOfDay(TODAY + DAY));
+        assertEquals(2, days.indexOfDay(TODAY + 3 * DAY - 1));
+        assertEquals(-1, ForecastDays.EMPTY.indexOfDay(TODAY));
+    }
+
+    // A forecast the phone hasn't replaced by the end of its last day is no longer shown.
+    public void testIndexOfDayAfterLastDay() {
+        ForecastDays days = newDays(true);
+        assertEquals(-1, days.indexOfDay(TODAY + 3 * DAY));
+        assertEquals(-1, days.indexOfDay(TODAY + 5 * DAY));
+    }
+
+    public void testFormatTemperature() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        try {
+            assertEquals("20\u00B0", newDays(true).formatTemperature(FORMAT, 20f));
+            assertEquals("68\u00B0", newDays(false).formatTemperature(FORMAT, 20f));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import junit.framework.TestCase;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time the watch face draws, and what keeping it up to date costs.
+ */
+public class TestTimeText extends TestCase {
+
+    private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("America/Los_Angeles");
+    // Two frames a second, as in interactive mode.
+    private static final long FRAME_MS = TimeUnit.SECONDS.toMillis(1) / 2;
+    private static final int FRAMES = 100000;
+
+    private static long timeAt(int hours, int minutes, int seconds) {
+        Calendar calendar = Calendar.getInstance(TIME_ZONE);
+        calendar.clear();
+        calendar.set(2016, Calendar.JUNE, 8, hours, minutes, seconds);
+        return calendar.getTimeInMillis();
+    }
+
+    public void testFormatsTime() {
+        TimeText timeText = new TimeText(TIME_ZONE);
+        assertTrue(timeText.update(timeAt(0, 0, 0)));
+        assertEquals("0:00", timeText.toString());
+        assertEquals(1, timeText.hoursLength);
+
+        assertTrue(timeText.update(timeAt(9, 5, 30)));
+        assertEquals("9:05", timeText.toString());
+
+        assertTrue(timeText.update(timeAt(23, 59, 59)));
+        assertEquals("23:59", timeText.toString());
+        assertEquals(2, timeText.hoursLength);
+    }
+
+    public void testChangesOnlyWithTheMinute() {
+        TimeText timeText = new TimeText(TIME_ZONE);
+        assertTrue(timeText.update(timeAt(12, 30, 0)));
+        assertFalse(timeText.changesAt(timeAt(12, 30, 59)));
+        assertFalse(timeText.update(timeAt(12, 30, 59)));
+        assertTrue(timeText.changesAt(timeAt(12, 31, 0)));
+        assertTrue(timeText.update(timeAt(12, 31, 0)));
+        assertEquals("12:31", timeText.toString());
+    }
+
+    public void testFollowsTimeZone() {
+        TimeText timeText = new TimeText(TIME_ZONE);
+        long now = timeAt(12, 30, 0);
+        timeText.update(now);
+        timeText.setTimeZone(TimeZone.getTimeZone("America/New_York"));
+        assertTrue(timeText.update(now));
+        assertEquals("15:30", timeText.toString());
+    }
+
+    // Each frame brings the time up to date with TimeText.update; within a minute that should
+    // make no garbage.  This covers the time update only, not the rest of onDraw.
+    public void testTimeUpdatesDoNotAllocate() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assertTrue("Error: This JVM can't count allocations",
+                threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assertTrue("Error: This JVM can't count allocations",
+                allocations.isThreadAllocatedMemorySupported());
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        TimeText timeText = new TimeText(TIME_ZONE);
+        long minute = timeAt(12, 30, 0);
+        // Warm up, so that class loading and compilation don't count.
+        for (int i = 0; i < FRAMES; i++) {
+            timeText.update(minute + i % 120 * FRAME_MS / 2);
+        }
+
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < FRAMES; i++) {
+            timeText.update(minute + i % 120 * FRAME_MS / 2);
+        }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals("Error: Time updates within a minute should allocate nothing",
+                0, allocated);
+    }
+}